@@ -0,0 +1,29 @@
+package lightdom.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar. Runs the benchmarks selected on the command line (all of them by default) with the GC profiler attached, so that the allocation rate is reported next to throughput and latency percentiles. All regular JMH command line options are supported.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ */
+public final class BenchmarkRunner
+{
+	private BenchmarkRunner()
+	{
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,133 @@
+package lightdom.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates the synthetic XML documents used by the benchmarks. The {@code books*} shapes repeat the records of {@code TestFiles/books.xml} until the requested size is reached, {@code deep} nests elements in a single long chain and {@code wide} puts a large number of leaf elements below the root element.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ */
+public final class DocumentShapes
+{
+	/** Shape names accepted by {@link #generate(String)}. */
+	public static final String BOOKS = "books";
+	public static final String BOOKS_1MB = "books-1mb";
+	public static final String BOOKS_10MB = "books-10mb";
+	public static final String BOOKS_100MB = "books-100mb";
+	public static final String DEEP = "deep";
+	public static final String WIDE = "wide";
+
+	private static final int DEEP_DEPTH = 1000;
+	private static final int WIDE_WIDTH = 100000;
+
+	private static final String[][] BOOKS_DATA = {
+			{"Gambardella, Matthew", "XML Developer's Guide", "Computer", "44.95", "2000-10-01", "An in-depth look at creating applications with XML. &amp;äöü$@*#~"},
+			{"Ralls, Kim", "Midnight Rain", "Fantasy", "5.95", "2000-12-16", "A former architect battles corporate zombies,\n\t\t\tan evil sorceress, and her own childhood to become queen\n\t\t\tof the world.\n\t\t"},
+			{"Corets, Eva", "Maeve Ascendant", "Fantasy", "5.95", "2000-11-17", "After the collapse of a nanotechnology\n\t\t\tsociety in England, the young survivors lay the\n\t\t\tfoundation for a new society.\n\t\t"},
+			{"Corets, Eva", "Oberon's Legacy", "Fantasy", "5.95", "2001-03-10", "In post-apocalypse England, the mysterious\n\t\t\tagent known only as Oberon helps to create a new life\n\t\t\tfor the inhabitants of London. Sequel to Maeve\n\t\t\tAscendant.\n\t\t"},
+			{"Corets, Eva", "The Sundered Grail", "Fantasy", "5.95", "2001-09-10", "The two daughters of Maeve, half-sisters,\n\t\t\tbattle one another for control of England. Sequel to\n\t\t\tOberon's Legacy.\n\t\t"},
+			{"Randall, Cynthia", "Lover Birds", "Romance", "4.95", "2000-09-02", "When Carla meets Paul at an ornithology\n\t\t\tconference, tempers fly as feathers get ruffled.\n\t\t"},
+			{"Thurman, Paula", "Splish Splash", "Romance", "4.95", "2000-11-02", "A deep sea diver finds true love twenty\n\t\t\tthousand leagues beneath the sea.\n\t\t"},
+			{"Knorr, Stefan", "Creepy Crawlies", "Horror", "4.95", "2000-12-06", "An anthology of horror stories about roaches,\n\t\t\tcentipedes, scorpions and other insects.\n\t\t"},
+			{"Kress, Peter", "Paradox Lost", "Science Fiction", "6.95", "2000-11-02", "After an inadvertant trip through a Heisenberg\n\t\t\tUncertainty Device, James Salway discovers the problems\n\t\t\tof being quantum.\n\t\t"},
+			{"O'Brien, Tim", "Microsoft .NET: The Programming Bible", "Computer", "36.95", "2000-12-09", "Microsoft's .NET initiative is explored in\n\t\t\tdetail in this deep programmer's reference.\n\t\t"},
+			{"O'Brien, Tim", "MSXML3: A Comprehensive Guide", "Computer", "36.95", "2000-12-01", "The Microsoft MSXML3 parser is covered in\n\t\t\tdetail, with attention to XML DOM interfaces, XSLT processing,\n\t\t\tSAX and more.\n\t\t"},
+			{"Galos, Mike", "Visual Studio 7: A Comprehensive Guide", "Computer", "49.95", "2001-04-16", "Microsoft Visual Studio 7 is explored in depth,\n\t\t\tlooking at how Visual Basic, Visual C++, C#, and ASP+ are\n\t\t\tintegrated into a comprehensive development\n\t\t\tenvironment.\n\t\t"}
+	};
+
+	private DocumentShapes()
+	{
+	}
+
+	/**
+	 * Generates the XML document for the given shape.
+	 *
+	 * @param shape one of the shape names defined in this class
+	 * @return UTF-8 encoded XML document
+	 */
+	public static byte[] generate(String shape)
+	{
+		switch(shape)
+		{
+			case BOOKS:
+				return books(0);
+			case BOOKS_1MB:
+				return books(1 << 20);
+			case BOOKS_10MB:
+				return books(10 << 20);
+			case BOOKS_100MB:
+				return books(100 << 20);
+			case DEEP:
+				return deep(DEEP_DEPTH);
+			case WIDE:
+				return wide(WIDE_WIDTH);
+			default:
+				throw new IllegalArgumentException("Unknown document shape: " + shape);
+		}
+	}
+
+	/**
+	 * Generates a catalog of books. The twelve records of {@code TestFiles/books.xml} are written once and then repeated with new ids until the document has at least the given size.
+	 *
+	 * @param minimumSize minimum size of the document in characters
+	 * @return UTF-8 encoded XML document
+	 */
+	public static byte[] books(int minimumSize)
+	{
+		StringBuilder xml = new StringBuilder(Math.max(minimumSize, 8192) + 1024);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<catalog>");
+		int record = 0;
+		do
+		{
+			for(String[] book : BOOKS_DATA)
+			{
+				xml.append("\n\t<book id=\"bk").append(101 + record++).append("\">");
+				xml.append("\n\t\t<author>").append(book[0]).append("</author>");
+				xml.append("\n\t\t<title>").append(book[1]).append("</title>");
+				xml.append("\n\t\t<genre>").append(book[2]).append("</genre>");
+				xml.append("\n\t\t<price>").append(book[3]).append("</price>");
+				xml.append("\n\t\t<publish_date>").append(book[4]).append("</publish_date>");
+				xml.append("\n\t\t<description>").append(book[5]).append("</description>");
+				xml.append("\n\t</book>");
+			}
+		}
+		while(xml.length() < minimumSize);
+		xml.append("\n</catalog>\n");
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Generates a document consisting of a single chain of nested elements, each of which carries an attribute and a short text.
+	 *
+	 * @param depth number of nested elements below the root element
+	 * @return UTF-8 encoded XML document
+	 */
+	public static byte[] deep(int depth)
+	{
+		StringBuilder xml = new StringBuilder(depth * 48);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<root>");
+		for(int i = 0; i < depth; i++)
+			xml.append("<level n=\"").append(i).append("\">text ").append(i);
+		for(int i = 0; i < depth; i++)
+			xml.append("</level>");
+		xml.append("</root>\n");
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Generates a document with a large number of leaf elements directly below the root element.
+	 *
+	 * @param width number of child elements of the root element
+	 * @return UTF-8 encoded XML document
+	 */
+	public static byte[] wide(int width)
+	{
+		StringBuilder xml = new StringBuilder(width * 40);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<root>");
+		for(int i = 0; i < width; i++)
+			xml.append("\n\t<item id=\"i").append(i).append("\" n=\"").append(i).append("\">").append(i).append("</item>");
+		xml.append("\n</root>\n");
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,84 @@
+package lightdom.benchmarks;
+
+import lightdom.Document;
+import lightdom.Element;
+import lightdom.Node;
+import lightdom.TextNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Element#appendChild(Node)} and {@link Element#removeChild(Node)}, both by re-parenting existing subtrees and by building a new tree from scratch.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class MutateBenchmark
+{
+	@Param({DocumentShapes.BOOKS, DocumentShapes.BOOKS_1MB, DocumentShapes.DEEP, DocumentShapes.WIDE})
+	public String shape;
+
+	private Element rootElement;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		rootElement = Document.fromInputStream(new ByteArrayInputStream(DocumentShapes.generate(shape))).getRootElement();
+	}
+
+	/**
+	 * Moves the first child of the root element to the end. Every call removes a whole subtree and attaches it again.
+	 */
+	@Benchmark
+	public Element moveFirstChildToEnd()
+	{
+		Node firstChild = rootElement.getChildren().get(0);
+		rootElement.appendChild(firstChild);
+		return rootElement;
+	}
+
+	/**
+	 * Removes the first child of the root element and appends it again in two separate steps.
+	 */
+	@Benchmark
+	public Element removeAndAppendChild()
+	{
+		Node firstChild = rootElement.getChildren().get(0);
+		rootElement.removeChild(firstChild);
+		rootElement.appendChild(firstChild);
+		return rootElement;
+	}
+
+	/**
+	 * Builds a copy of the whole document from new elements and text nodes.
+	 */
+	@Benchmark
+	public Element buildTree()
+	{
+		return copy(rootElement);
+	}
+
+	private static Element copy(Element element)
+	{
+		Element copy = new Element(element.getName(), element.getId());
+		for(Map.Entry<String, String> attribute : element.getAttributes().entrySet())
+			copy.setAttribute(attribute.getKey(), attribute.getValue());
+		for(Node child : element.getChildren())
+		{
+			if(child instanceof Element)
+				copy.appendChild(copy((Element)child));
+			else
+				copy.appendChild(new TextNode(((TextNode)child).getText()));
+		}
+		return copy;
+	}
+}
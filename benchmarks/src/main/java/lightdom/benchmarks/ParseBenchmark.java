@@ -0,0 +1,39 @@
+package lightdom.benchmarks;
+
+import lightdom.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Document#fromInputStream(java.io.InputStream)} on the synthetic document shapes.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ParseBenchmark
+{
+	@Param({DocumentShapes.BOOKS, DocumentShapes.BOOKS_1MB, DocumentShapes.BOOKS_10MB, DocumentShapes.BOOKS_100MB, DocumentShapes.DEEP, DocumentShapes.WIDE})
+	public String shape;
+
+	private byte[] xml;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		xml = DocumentShapes.generate(shape);
+	}
+
+	@Benchmark
+	public Document fromInputStream()
+	{
+		return Document.fromInputStream(new ByteArrayInputStream(xml));
+	}
+}
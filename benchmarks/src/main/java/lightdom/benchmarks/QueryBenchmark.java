@@ -0,0 +1,50 @@
+package lightdom.benchmarks;
+
+import lightdom.Document;
+import lightdom.Element;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Element#getElementsByQuery(String)} and {@link Element#getElementByQuery(String)} against cached documents of different sizes.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class QueryBenchmark
+{
+	@Param({DocumentShapes.BOOKS, DocumentShapes.BOOKS_1MB, DocumentShapes.BOOKS_10MB})
+	public String shape;
+
+	@Param({"book[@id = 'bk105']/title", "book[price > 30]/title", "book[contains(description, 'battle one another')]/author", "//description"})
+	public String query;
+
+	private Element rootElement;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		rootElement = Document.fromInputStream(new ByteArrayInputStream(DocumentShapes.generate(shape))).getRootElement();
+	}
+
+	@Benchmark
+	public List<Element> getElementsByQuery()
+	{
+		return rootElement.getElementsByQuery(query);
+	}
+
+	@Benchmark
+	public Element getElementByQuery()
+	{
+		return rootElement.getElementByQuery(query);
+	}
+}
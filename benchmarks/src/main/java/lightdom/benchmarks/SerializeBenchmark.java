@@ -0,0 +1,62 @@
+package lightdom.benchmarks;
+
+import lightdom.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Document#toOutputStream(java.io.OutputStream)} on the synthetic document shapes. The output is written to a stream that only counts the bytes so that the benchmark is not bound by I/O.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class SerializeBenchmark
+{
+	@Param({DocumentShapes.BOOKS, DocumentShapes.BOOKS_1MB, DocumentShapes.BOOKS_10MB, DocumentShapes.BOOKS_100MB, DocumentShapes.DEEP, DocumentShapes.WIDE})
+	public String shape;
+
+	private Document document;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		document = Document.fromInputStream(new ByteArrayInputStream(DocumentShapes.generate(shape)));
+	}
+
+	@Benchmark
+	public long toOutputStream()
+	{
+		CountingOutputStream outputStream = new CountingOutputStream();
+		document.toOutputStream(outputStream);
+		return outputStream.count;
+	}
+
+	/**
+	 * Output stream discarding all data written to it.
+	 */
+	private static final class CountingOutputStream extends OutputStream
+	{
+		private long count = 0;
+
+		@Override
+		public void write(int b)
+		{
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len)
+		{
+			count += len;
+		}
+	}
+}
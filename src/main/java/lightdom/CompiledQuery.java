@@ -0,0 +1,234 @@
+package lightdom;
+
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents a compiled Xpath query. A query is compiled once and can then be evaluated on any number of elements by multiple threads concurrently, as long as the elements are not modified at the same time. Queries are evaluated directly on the LightDOM tree by the native XPath engine. Queries using features not supported by the native engine are compiled and processed by the built in XML library; evaluations of such a query and evaluations on the same tree are serialized.
+ * <p>
+ * {@link Element#getElementsByQuery(String)} and {@link Element#getElementByQuery(String)} keep the most recently used queries in a bounded cache, so repeated queries are only compiled once.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+public final class CompiledQuery
+{
+	private static final int DEFAULT_CACHE_SIZE = 256;
+
+	private static final ThreadLocal<XPathFactory> xPathFactory = new ThreadLocal<XPathFactory>()
+	{
+		@Override
+		protected XPathFactory initialValue()
+		{
+			return XPathFactory.newInstance();
+		}
+	};
+
+	private static final Object cacheLock = new Object();
+	private static int cacheSize = DEFAULT_CACHE_SIZE;
+	private static final Map<String, CompiledQuery> cache = new LinkedHashMap<String, CompiledQuery>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CompiledQuery> eldest)
+		{
+			return size() > cacheSize;
+		}
+	};
+
+	private final String query;
+	private final XPathExpr expression;
+	private final XPathExpression w3cExpression;
+
+	private CompiledQuery(String query, XPathExpr expression, XPathExpression w3cExpression)
+	{
+		this.query = query;
+		this.expression = expression;
+		this.w3cExpression = w3cExpression;
+	}
+
+	/**
+	 * Compiles an Xpath query. This will throw a RuntimeException if the query is not a valid Xpath expression.
+	 *
+	 * @param query Xpath query to be compiled
+	 * @return compiled query
+	 */
+	public static CompiledQuery compile(String query)
+	{
+		try
+		{
+			return new CompiledQuery(query, XPathParser.parse(query), null);
+		}
+		catch(IllegalArgumentException e)
+		{
+			// not supported by the native engine: compile with the built in XML library instead
+		}
+
+		return new CompiledQuery(query, null, compileW3CExpression(query));
+	}
+
+	/**
+	 * Returns the compiled query from the cache or compiles and caches it if it is not in the cache.
+	 *
+	 * @param query Xpath query
+	 * @return compiled query
+	 */
+	static CompiledQuery getCached(String query)
+	{
+		synchronized(cacheLock)
+		{
+			CompiledQuery compiledQuery = cache.get(query);
+			if(compiledQuery != null)
+				return compiledQuery;
+		}
+
+		// compile outside of the lock, another thread may compile the same query concurrently
+		CompiledQuery compiledQuery = compile(query);
+		synchronized(cacheLock)
+		{
+			if(cacheSize > 0)
+				cache.put(query, compiledQuery);
+		}
+		return compiledQuery;
+	}
+
+	/**
+	 * Sets the maximum number of queries kept in the cache used by {@link Element#getElementsByQuery(String)} and {@link Element#getElementByQuery(String)}. The least recently used queries are removed if the cache is full. A size of 0 disables the cache.
+	 *
+	 * @param size maximum number of cached queries
+	 */
+	public static void setCacheSize(int size)
+	{
+		if(size < 0)
+			throw new IllegalArgumentException("Cache size must not be negative.");
+
+		synchronized(cacheLock)
+		{
+			cacheSize = size;
+			while(cache.size() > cacheSize)
+			{
+				cache.remove(cache.keySet().iterator().next());
+			}
+		}
+	}
+
+	/**
+	 * Returns the maximum number of queries kept in the cache.
+	 *
+	 * @return maximum number of cached queries
+	 */
+	public static int getCacheSize()
+	{
+		synchronized(cacheLock)
+		{
+			return cacheSize;
+		}
+	}
+
+	/**
+	 * Returns the Xpath query this instance was compiled from.
+	 *
+	 * @return Xpath query
+	 */
+	public String getQuery()
+	{
+		return query;
+	}
+
+	/**
+	 * Evaluates the query with the given element as context node.
+	 *
+	 * @param element context element
+	 * @return a list containing all elements matching the query in document order
+	 */
+	public List<Element> getElements(Element element)
+	{
+		List<Element> elementList = new ArrayList<>();
+		if(expression != null)
+		{
+			for(Object node : expression.evaluateNodeSet(element))
+			{
+				if(node instanceof Element)
+					elementList.add((Element)node);
+			}
+		}
+		else
+		{
+			// the generated w3c nodes are cached in the tree and cannot be read by multiple threads concurrently, neither can the compiled expression be evaluated
+			synchronized(new XPathExpr.Root(element).topElement)
+			{
+				try
+				{
+					NodeList nodeList;
+					synchronized(w3cExpression)
+					{
+						nodeList = (NodeList)w3cExpression.evaluate(element.toW3CNode(), XPathConstants.NODESET);
+					}
+					for(int i = 0; i < nodeList.getLength(); i++)
+					{
+						if(nodeList.item(i) instanceof org.w3c.dom.Element)
+						{
+							// find corresponding element by the reference stored in the generated w3c node
+							Object resultElement = nodeList.item(i).getUserData(Element.USER_DATA_KEY);
+							if(resultElement instanceof Element)
+								elementList.add((Element)resultElement);
+						}
+					}
+				}
+				catch(XPathExpressionException e)
+				{
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		return elementList;
+	}
+
+	/**
+	 * Evaluates the query with the given element as context node and returns the first matching element.
+	 *
+	 * @param element context element
+	 * @return first element matching the query or {@code null} if none match
+	 */
+	public Element getElement(Element element)
+	{
+		List<Element> elementList = getElements(element);
+		if(elementList.size() == 0)
+			return null;
+		else
+			return elementList.get(0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return query;
+	}
+
+	/**
+	 * Compiles a query using the built in XML library.
+	 *
+	 * @param query Xpath query
+	 * @return compiled expression
+	 */
+	private static XPathExpression compileW3CExpression(String query)
+	{
+		try
+		{
+			return xPathFactory.get().newXPath().compile(query);
+		}
+		catch(XPathExpressionException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -10,9 +10,10 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
 /**
  * Used to generate a new DOM document. A new document can be created using the default constructor or loaded from a file or an InputStream. An existing document can be saved to a file or to an OutputStream.
@@ -25,13 +26,25 @@ public class Document extends DefaultHandler
 	private static final Charset DEFAULT_ENCODING = StandardCharsets.UTF_8;
 	private static final String DEFAULT_VERSION = "1.0";
 
-	private final Stack<Element> openElements = new Stack<>();
+	private final TreeBuilder treeBuilder;
 	private Element rootElement = null;
-	private TextNode openTextNode = null;
 
 	private Charset encoding = DEFAULT_ENCODING;
 	private String version = DEFAULT_VERSION;
 
+	/**
+	 * Creates a new empty document.
+	 */
+	public Document()
+	{
+		this(WhitespacePolicy.STRIP_TABS, new NameTable());
+	}
+
+	private Document(WhitespacePolicy whitespacePolicy, NameTable nameTable)
+	{
+		this.treeBuilder = new TreeBuilder(whitespacePolicy, nameTable);
+	}
+
 	/**
 	 * Creates a new Document from an input stream.
 	 *
@@ -40,7 +53,34 @@ public class Document extends DefaultHandler
 	 */
 	public static Document fromInputStream(InputStream inputStream)
 	{
-		Document doc = new Document();
+		return fromInputStream(inputStream, WhitespacePolicy.STRIP_TABS);
+	}
+
+	/**
+	 * Creates a new Document from an input stream.
+	 *
+	 * @param inputStream      input stream from which the document should be loaded
+	 * @param whitespacePolicy policy for character data consisting of whitespace
+	 * @return document represented by the data form the input stream
+	 * @since 1.1.5
+	 */
+	public static Document fromInputStream(InputStream inputStream, WhitespacePolicy whitespacePolicy)
+	{
+		return fromInputStream(inputStream, whitespacePolicy, new NameTable());
+	}
+
+	/**
+	 * Creates a new Document from an input stream.
+	 *
+	 * @param inputStream      input stream from which the document should be loaded
+	 * @param whitespacePolicy policy for character data consisting of whitespace
+	 * @param nameTable        name table used to canonicalize element and attribute names, can be shared by multiple documents
+	 * @return document represented by the data form the input stream
+	 * @since 1.1.5
+	 */
+	public static Document fromInputStream(InputStream inputStream, WhitespacePolicy whitespacePolicy, NameTable nameTable)
+	{
+		Document doc = new Document(whitespacePolicy, nameTable);
 		doc.parse(inputStream);
 		return doc;
 	}
@@ -53,12 +93,39 @@ public class Document extends DefaultHandler
 	 */
 	public static Document fromFile(File file)
 	{
-		Document doc = new Document();
+		return fromFile(file, WhitespacePolicy.STRIP_TABS);
+	}
+
+	/**
+	 * Creates a new document from a file.
+	 *
+	 * @param file             file from which the document should be loaded
+	 * @param whitespacePolicy policy for character data consisting of whitespace
+	 * @return document represented by the content of the file
+	 * @since 1.1.5
+	 */
+	public static Document fromFile(File file, WhitespacePolicy whitespacePolicy)
+	{
+		return fromFile(file, whitespacePolicy, new NameTable());
+	}
+
+	/**
+	 * Creates a new document from a file.
+	 *
+	 * @param file             file from which the document should be loaded
+	 * @param whitespacePolicy policy for character data consisting of whitespace
+	 * @param nameTable        name table used to canonicalize element and attribute names, can be shared by multiple documents
+	 * @return document represented by the content of the file
+	 * @since 1.1.5
+	 */
+	public static Document fromFile(File file, WhitespacePolicy whitespacePolicy, NameTable nameTable)
+	{
+		Document doc = null;
 		FileInputStream fileInputStream = null;
 		try
 		{
 			fileInputStream = new FileInputStream(file);
-			doc = fromInputStream(fileInputStream);
+			doc = fromInputStream(fileInputStream, whitespacePolicy, nameTable);
 		}
 		catch(FileNotFoundException e)
 		{
@@ -90,6 +157,33 @@ public class Document extends DefaultHandler
 		return fromFile(new File(fileName));
 	}
 
+	/**
+	 * Creates a new document from a file. This method is wrapper for the {@link #fromFile(java.io.File, WhitespacePolicy)} method.
+	 *
+	 * @param fileName         absolute or relative path to the file to be loaded
+	 * @param whitespacePolicy policy for character data consisting of whitespace
+	 * @return document represented by the content of the file
+	 * @since 1.1.5
+	 */
+	public static Document fromFile(String fileName, WhitespacePolicy whitespacePolicy)
+	{
+		return fromFile(new File(fileName), whitespacePolicy);
+	}
+
+	/**
+	 * Creates a new document from a file. This method is wrapper for the {@link #fromFile(java.io.File, WhitespacePolicy, NameTable)} method.
+	 *
+	 * @param fileName         absolute or relative path to the file to be loaded
+	 * @param whitespacePolicy policy for character data consisting of whitespace
+	 * @param nameTable        name table used to canonicalize element and attribute names, can be shared by multiple documents
+	 * @return document represented by the content of the file
+	 * @since 1.1.5
+	 */
+	public static Document fromFile(String fileName, WhitespacePolicy whitespacePolicy, NameTable nameTable)
+	{
+		return fromFile(new File(fileName), whitespacePolicy, nameTable);
+	}
+
 	/**
 	 * Builds document based on an instance of org.w3c.dom.Document.
 	 *
@@ -107,7 +201,7 @@ public class Document extends DefaultHandler
 			doc.setVersion(w3cDocument.getXmlVersion());
 
 		if(w3cDocument.getDocumentElement() != null)
-			doc.setRootElement(Element.fromW3CNode(w3cDocument.getDocumentElement()));
+			doc.setRootElement(Element.fromW3CNode(w3cDocument.getDocumentElement(), doc.treeBuilder.getNameTable()));
 
 		return doc;
 	}
@@ -122,29 +216,14 @@ public class Document extends DefaultHandler
 		if(rootElement == null)
 			throw new RuntimeException("Document has no root node.");
 
-		OutputStreamWriter writer = null;
+		DocumentWriter writer = new DocumentWriter(outputStream, encoding, version);
 		try
 		{
-			writer = new OutputStreamWriter(outputStream, encoding);
-			writer.write("<?xml version=\"" + version + "\" encoding=\"" + encoding.displayName() + "\"?>");
-			rootElement.write(writer, 0, true);
-			writer.close();
-		}
-		catch(IOException e)
-		{
-			throw new RuntimeException(e);
+			writer.writeElement(rootElement);
 		}
 		finally
 		{
-			try
-			{
-				if(writer != null)
-					writer.close();
-			}
-			catch(IOException e)
-			{
-				throw new RuntimeException(e);
-			}
+			writer.close();
 		}
 	}
 
@@ -190,24 +269,12 @@ public class Document extends DefaultHandler
 	}
 
 	/**
-	 * Converts document to an instance of org.w3c.dom.Document.
+	 * Converts document to an instance of org.w3c.dom.Document. Every call returns a new, independent document, so changes to the returned document do not affect this document and vice versa.
 	 *
 	 * @return instance of org.w3c.dom.Document
 	 * @since 1.1.0
 	 */
 	public org.w3c.dom.Document toW3CDocument()
-	{
-		return toW3CDocument(false);
-	}
-
-	/**
-	 * Converts document to an instance of org.w3c.dom.Document.
-	 *
-	 * @param keepIndex {@code true} if the index attribute (lightdom specific) should be kept, {@code false} otherwise
-	 * @return instance of org.w3c.dom.Document
-	 * @since 1.1.2
-	 */
-	protected org.w3c.dom.Document toW3CDocument(boolean keepIndex)
 	{
 		try
 		{
@@ -218,9 +285,9 @@ public class Document extends DefaultHandler
 			// set version
 			w3cDocument.setXmlVersion(getVersion());
 
-			// append root element
+			// append root element, the generated nodes kept by the elements are not used, as they must not be changed by the caller
 			if(rootElement != null)
-				w3cDocument.appendChild(rootElement.toW3CNode(w3cDocument, keepIndex));
+				w3cDocument.appendChild(rootElement.copyToW3CNode(w3cDocument));
 
 			return w3cDocument;
 		}
@@ -230,6 +297,19 @@ public class Document extends DefaultHandler
 		}
 	}
 
+	/**
+	 * Returns a read-only view of this document as an instance of org.w3c.dom.Document. Unlike {@link #toW3CDocument()}, the view does not copy the elements of this document but reads them directly, so it can be passed to consumers which only read the tree, such as XSLT transformations or schema validation, without copying the elements. A view node is created for every node that is visited and is only kept as long as the consumer references it. A kept view node takes about 80 bytes, so consumers which keep every node they have visited, such as XSLT processors building their own node tables, still need memory proportional to the size of the document while they run.
+	 * <p>
+	 * Methods of the view that would modify the tree throw a {@link org.w3c.dom.DOMException}. The view always reflects the current elements of this document, which must not be modified while the view is in use. LightDOM does not keep namespaces, so all nodes of the view have no namespace. A view must not be used by multiple threads concurrently, but each thread can use its own view of the same document.
+	 *
+	 * @return read-only view of this document
+	 * @since 1.1.5
+	 */
+	public org.w3c.dom.Document asW3CDocument()
+	{
+		return new W3CNodeView.DocumentView(this);
+	}
+
 	/**
 	 * Sets the root element of this document. Setting a new root element will replace the old one as there can be only one root element.
 	 *
@@ -250,6 +330,34 @@ public class Document extends DefaultHandler
 		return rootElement;
 	}
 
+	/**
+	 * Returns an element with the corresponding id anywhere in this document. The lookup uses an index of the whole document, which is built on the first call and maintained as elements are appended, removed or change their id, so that lookups take constant time. See {@link Element#findElementById(String)}.
+	 *
+	 * @param id id of the element
+	 * @return element with the corresponding id or {@code null} if no such element exists
+	 * @since 1.1.5
+	 */
+	public Element getElementById(String id)
+	{
+		if(rootElement == null)
+			return null;
+		return rootElement.findElementById(id);
+	}
+
+	/**
+	 * Returns all elements of this document with the corresponding name in document order, including the root element. The lookup uses the same index as {@link #getElementById(String)}, see {@link Element#getDescendantsByName(String)}.
+	 *
+	 * @param name name of the elements
+	 * @return list of elements matching the name in document order or an empty list if none match
+	 * @since 1.1.5
+	 */
+	public List<Element> getDescendantsByName(String name)
+	{
+		if(rootElement == null)
+			return new ArrayList<>();
+		return new ArrayList<>(DocumentIndex.of(rootElement).getElementsByName(name));
+	}
+
 	/**
 	 * Parses input stream and builds document.
 	 *
@@ -321,21 +429,53 @@ public class Document extends DefaultHandler
 	}
 
 	/**
-	 * Helper method to escape certain characters according to the XML standard.
+	 * Helper method to escape certain characters according to the XML standard. The characters {@code &}, {@code <}, {@code >}, {@code "} and {@code '} are escaped, so the encoded value can be used as attribute value.
 	 *
 	 * @param value the value to be encoded
-	 * @return the encoded value
+	 * @return the encoded value or the given instance if no character needs to be escaped
 	 * @since 1.1.2
 	 */
 	protected static String encodeValueForWriting(String value)
 	{
-		value = value.replace("&", "&amp;");
-		value = value.replace("\"", "&quot;");
-		value = value.replace("'", "&apos;");
-		value = value.replace("<", "&lt;");
-		value = value.replace(">", "&gt;");
+		return XMLSerializer.escape(value, true);
+	}
+
+	/**
+	 * Helper method to escape certain characters according to the XML standard and write the encoded value to a writer. The characters {@code &}, {@code <}, {@code >}, {@code "} and {@code '} are escaped, so the encoded value can be used as attribute value.
+	 *
+	 * @param value  the value to be encoded
+	 * @param writer writer to which the encoded value should be written
+	 * @throws IOException if an I/O error occurs
+	 * @since 1.1.5
+	 */
+	protected static void encodeValueForWriting(String value, Writer writer) throws IOException
+	{
+		XMLSerializer.escape(value, true, writer);
+	}
+
+	/**
+	 * Helper method to escape certain characters in text content according to the XML standard. Only the characters {@code &}, {@code <} and {@code >} are escaped, quotes do not need to be escaped in text content.
+	 *
+	 * @param text the text to be encoded
+	 * @return the encoded text or the given instance if no character needs to be escaped
+	 * @since 1.1.5
+	 */
+	protected static String encodeTextForWriting(String text)
+	{
+		return XMLSerializer.escape(text, false);
+	}
 
-		return value;
+	/**
+	 * Helper method to escape certain characters in text content according to the XML standard and write the encoded text to a writer. Only the characters {@code &}, {@code <} and {@code >} are escaped, quotes do not need to be escaped in text content.
+	 *
+	 * @param text   the text to be encoded
+	 * @param writer writer to which the encoded text should be written
+	 * @throws IOException if an I/O error occurs
+	 * @since 1.1.5
+	 */
+	protected static void encodeTextForWriting(String text, Writer writer) throws IOException
+	{
+		XMLSerializer.escape(text, false, writer);
 	}
 
 	/** {@inheritDoc} */
@@ -353,38 +493,24 @@ public class Document extends DefaultHandler
 	@Override
 	public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException
 	{
-		if(openTextNode != null)
-			openElements.peek().appendChild(openTextNode);
-
-		openTextNode = null;
-
-		Element parent;
-		if(!openElements.empty())
-			parent = openElements.peek();
-		else
-			parent = null;
-
 		String id = null;
 		Map<String, String> attributes = new HashMap<>();
 		if(atts != null)
 		{
+			NameTable nameTable = treeBuilder.getNameTable();
 			for(int i = 0; i < atts.getLength(); i++)
 			{
 				if("id".equalsIgnoreCase(atts.getLocalName(i)))
 					id = atts.getValue(i);
 				else
-					attributes.put(atts.getLocalName(i), atts.getValue(i));
+					attributes.put(nameTable.intern(atts.getLocalName(i)), atts.getValue(i));
 			}
 		}
 
-		Element element = new Element(localName, id, attributes);
-		if(parent != null)
-			parent.appendChild(element);
-
-		openElements.push(element);
+		treeBuilder.startElement(localName, id, attributes);
 		if(rootElement == null)
 		{
-			rootElement = element;
+			rootElement = treeBuilder.getRootElement();
 		}
 	}
 
@@ -392,29 +518,14 @@ public class Document extends DefaultHandler
 	@Override
 	public void endElement(String uri, String localName, String qName)
 	{
-		if(openTextNode != null)
-			openElements.peek().appendChild(openTextNode);
-
-		openTextNode = null;
-		openElements.pop();
+		treeBuilder.endElement();
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public void characters(char[] ch, int start, int length) throws SAXException
 	{
-		String textAsString = new String(ch, start, length);
-
-		textAsString = textAsString.replaceAll("\t", "");
-		textAsString = textAsString.replaceAll("^(\r\n)*$", "");
-		textAsString = textAsString.replaceAll("^(\n)*$", "");
-
-		if(textAsString.trim().length() > 0)
-		{
-			if(openTextNode == null)
-				openTextNode = new TextNode();
-			openTextNode.appendText(textAsString);
-		}
+		treeBuilder.characters(ch, start, length);
 	}
 
 	/** {@inheritDoc} */
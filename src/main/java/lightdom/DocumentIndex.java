@@ -0,0 +1,372 @@
+package lightdom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of all elements of a tree by id and by name. The index is built on the first lookup and shared by all elements of the tree, each of which keeps a reference to it, so that lookups are possible in constant time from any element. Once built, the index is maintained by {@link Element} when subtrees are appended or removed and when ids are changed.
+ * <p>
+ * The lists of elements by name are built separately on the first lookup by name, so that an index only used for ids does not keep them. The elements with the same name are kept in document order. Appending a subtree at the end of the tree keeps them in order, other changes mark the names concerned as dirty and the lists are sorted again on the next lookup. Removed elements are dropped on the next lookup as well, or as soon as they outnumber the remaining elements, so that the lists do not grow with the number of removals if lookups are rare.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+final class DocumentIndex
+{
+	// values are elements or, if multiple elements share an id, lists of elements
+	private final Map<String, Object> elementsById = new HashMap<>();
+
+	// elements by name in document order, except for the dirty names which may contain removed or misplaced elements, null until the first lookup by name
+	private volatile Map<String, List<Element>> elementsByName = null;
+	private final Set<String> dirtyNames = new HashSet<>();
+	private volatile boolean dirty = false;
+	private int nameEntryCount = 0;
+	private int removedEntryCount = 0;
+
+	private final Element root;
+
+	private DocumentIndex(Element root)
+	{
+		this.root = root;
+	}
+
+	/**
+	 * Returns the index of the tree an element belongs to, building it if it does not exist yet.
+	 *
+	 * @param element any element of the tree
+	 * @return index of the tree
+	 */
+	static DocumentIndex of(Element element)
+	{
+		DocumentIndex index = element.getDocumentIndex();
+		if(index != null)
+			return index;
+
+		Element root = element;
+		while(root.getParent() != null)
+			root = root.getParent();
+
+		// the index is filled completely before it is published to the elements
+		index = new DocumentIndex(root);
+		List<Element> elements = subtree(root);
+		for(Element subtreeElement : elements)
+			index.addId(subtreeElement);
+		for(Element subtreeElement : elements)
+			subtreeElement.setDocumentIndex(index);
+
+		return index;
+	}
+
+	/**
+	 * Returns an element with the corresponding id. If multiple elements have the same id, it is not defined which one is returned.
+	 *
+	 * @param id id of the element
+	 * @return element with the corresponding id or {@code null} if no such element exists
+	 */
+	Element getElementById(String id)
+	{
+		Object value = elementsById.get(id);
+		if(value instanceof Element)
+			return (Element)value;
+		if(value != null)
+			return ((ElementList)value).get(0);
+		return null;
+	}
+
+	/**
+	 * Returns all elements with the corresponding name in document order.
+	 *
+	 * @param name name of the elements
+	 * @return elements with the corresponding name, this list must not be modified
+	 */
+	List<Element> getElementsByName(String name)
+	{
+		Map<String, List<Element>> nameLists = elementsByName;
+		if(nameLists == null)
+			nameLists = buildNameLists();
+		else if(dirty)
+			cleanUp();
+
+		List<Element> elements = nameLists.get(name);
+		return elements == null ? Collections.<Element>emptyList() : elements;
+	}
+
+	/**
+	 * Returns the number of entries of the lists of elements by name, including removed elements which have not been dropped yet.
+	 *
+	 * @return number of entries or 0 if the lists have not been built
+	 */
+	int getNameEntryCount()
+	{
+		return nameEntryCount;
+	}
+
+	/**
+	 * Returns all descendants of an element with the corresponding name in document order.
+	 *
+	 * @param element element of the tree
+	 * @param name    name of the descendants
+	 * @return descendants with the corresponding name
+	 */
+	List<Element> getDescendantsByName(Element element, String name)
+	{
+		List<Element> elements = getElementsByName(name);
+
+		// the descendants follow the element directly in document order
+		int low = 0;
+		int high = elements.size();
+		while(low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if(XPathExpr.compareDocumentOrder(elements.get(middle), element) <= 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+
+		List<Element> descendants = new ArrayList<>();
+		for(int i = low; i < elements.size() && isDescendant(elements.get(i), element); i++)
+			descendants.add(elements.get(i));
+		return descendants;
+	}
+
+	/**
+	 * Adds all elements of a subtree that has been appended to the tree.
+	 *
+	 * @param element root of the subtree
+	 */
+	void addSubtree(Element element)
+	{
+		for(Element subtreeElement : subtree(element))
+		{
+			add(subtreeElement);
+			subtreeElement.setDocumentIndex(this);
+		}
+	}
+
+	/**
+	 * Removes all elements of a subtree that has been removed from the tree.
+	 *
+	 * @param element root of the subtree
+	 */
+	void removeSubtree(Element element)
+	{
+		boolean hasNameLists = elementsByName != null;
+		for(Element subtreeElement : subtree(element))
+		{
+			remove(subtreeElement, subtreeElement.getId());
+			subtreeElement.setDocumentIndex(null);
+
+			// removed elements are dropped from the name lists on the next lookup
+			if(hasNameLists)
+			{
+				dirtyNames.add(subtreeElement.getName());
+				removedEntryCount++;
+			}
+		}
+		dirty = !dirtyNames.isEmpty();
+
+		// the removed elements are dropped now if they make up more than half of the entries
+		if(removedEntryCount > nameEntryCount - removedEntryCount)
+			cleanUp();
+	}
+
+	/**
+	 * Drops the references to a former index from all elements of a subtree that is appended to a tree without index.
+	 *
+	 * @param element root of the subtree
+	 */
+	static void clearSubtree(Element element)
+	{
+		for(Element subtreeElement : subtree(element))
+			subtreeElement.setDocumentIndex(null);
+	}
+
+	/**
+	 * Updates the index after the id of an element has been changed.
+	 *
+	 * @param element  element
+	 * @param formerId former id of the element
+	 */
+	void changeId(Element element, String formerId)
+	{
+		remove(element, formerId);
+		addId(element);
+	}
+
+	private void add(Element element)
+	{
+		Map<String, List<Element>> nameLists = elementsByName;
+		if(nameLists != null)
+		{
+			List<Element> elementsWithSameName = nameLists.get(element.getName());
+			if(elementsWithSameName == null)
+			{
+				elementsWithSameName = new ArrayList<>();
+				nameLists.put(element.getName(), elementsWithSameName);
+			}
+			else if(!dirtyNames.contains(element.getName()) && XPathExpr.compareDocumentOrder(elementsWithSameName.get(elementsWithSameName.size() - 1), element) > 0)
+			{
+				dirtyNames.add(element.getName());
+				dirty = true;
+			}
+			elementsWithSameName.add(element);
+			nameEntryCount++;
+		}
+
+		addId(element);
+	}
+
+	private void addId(Element element)
+	{
+		String id = element.getId();
+		if(id == null)
+			return;
+
+		Object value = elementsById.get(id);
+		if(value == null)
+		{
+			elementsById.put(id, element);
+		}
+		else if(value instanceof Element)
+		{
+			ElementList elements = new ElementList();
+			elements.add((Element)value);
+			elements.add(element);
+			elementsById.put(id, elements);
+		}
+		else
+		{
+			((ElementList)value).add(element);
+		}
+	}
+
+	private void remove(Element element, String id)
+	{
+		if(id == null)
+			return;
+
+		Object value = elementsById.get(id);
+		if(value == element)
+		{
+			elementsById.remove(id);
+		}
+		else if(value instanceof ElementList)
+		{
+			ElementList elements = (ElementList)value;
+			for(int i = 0; i < elements.size(); i++)
+			{
+				if(elements.get(i) == element)
+				{
+					elements.remove(i);
+					break;
+				}
+			}
+			if(elements.size() == 1)
+				elementsById.put(id, elements.get(0));
+		}
+	}
+
+	/**
+	 * Builds the lists of elements by name on the first lookup by name.
+	 *
+	 * @return elements by name
+	 */
+	private synchronized Map<String, List<Element>> buildNameLists()
+	{
+		Map<String, List<Element>> nameLists = elementsByName;
+		if(nameLists != null)
+			return nameLists;
+
+		// the elements of the tree are visited in document order, so the lists are sorted
+		nameLists = new HashMap<>();
+		for(Element element : subtree(root))
+		{
+			List<Element> elementsWithSameName = nameLists.get(element.getName());
+			if(elementsWithSameName == null)
+			{
+				elementsWithSameName = new ArrayList<>();
+				nameLists.put(element.getName(), elementsWithSameName);
+			}
+			elementsWithSameName.add(element);
+			nameEntryCount++;
+		}
+		elementsByName = nameLists;
+		return nameLists;
+	}
+
+	/**
+	 * Removes elements which are no longer part of the tree and duplicates from the lists of the dirty names and sorts them in document order.
+	 */
+	private synchronized void cleanUp()
+	{
+		if(!dirty)
+			return;
+
+		Map<String, List<Element>> nameLists = elementsByName;
+		for(String name : dirtyNames)
+		{
+			List<Element> elements = nameLists.get(name);
+			Map<Element, Boolean> visitedElements = new IdentityHashMap<>();
+			List<Element> result = new ArrayList<>(elements.size());
+			for(Element element : elements)
+			{
+				if(element.getDocumentIndex() == this && visitedElements.put(element, Boolean.TRUE) == null)
+					result.add(element);
+			}
+			Collections.sort(result, XPathExpr.DOCUMENT_ORDER);
+			nameEntryCount -= elements.size() - result.size();
+
+			if(result.isEmpty())
+				nameLists.remove(name);
+			else
+				nameLists.put(name, result);
+		}
+		dirtyNames.clear();
+		removedEntryCount = 0;
+		dirty = false;
+	}
+
+	private static boolean isDescendant(Element element, Element ancestor)
+	{
+		for(Element parent = element.getParent(); parent != null; parent = parent.getParent())
+		{
+			if(parent == ancestor)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns all elements of a subtree in document order.
+	 *
+	 * @param element root of the subtree
+	 * @return elements of the subtree
+	 */
+	private static List<Element> subtree(Element element)
+	{
+		List<Element> elements = new ArrayList<>();
+		TreeWalker walker = new TreeWalker(element);
+		while(walker.next())
+		{
+			if(walker.getCurrentNode() instanceof Element && !walker.isLeaving())
+				elements.add((Element)walker.getCurrentNode());
+		}
+		return elements;
+	}
+
+	/**
+	 * List of elements sharing an id.
+	 */
+	private static final class ElementList extends ArrayList<Element>
+	{
+		private static final long serialVersionUID = 1L;
+	}
+}
@@ -0,0 +1,336 @@
+package lightdom;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes an XML document incrementally, without holding the whole document in memory. Elements are opened and closed one at a time and can contain attributes, text and complete element subtrees. The output has the same format as {@link Document#toOutputStream(java.io.OutputStream)}.
+ * <p>
+ * Example:
+ * <pre>
+ * DocumentWriter writer = new DocumentWriter(new File("books.xml"));
+ * try
+ * {
+ *     writer.writeStartElement("catalog");
+ *     for(Book book : books)
+ *         writer.writeElement(createBookElement(book));
+ *     writer.writeEndElement();
+ * }
+ * finally
+ * {
+ *     writer.close();
+ * }
+ * </pre>
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+public class DocumentWriter implements Closeable, Flushable
+{
+	private static final Charset DEFAULT_ENCODING = StandardCharsets.UTF_8;
+	private static final String DEFAULT_VERSION = "1.0";
+
+	private final Writer writer;
+	private final XMLSerializer serializer;
+	private final List<OpenElement> openElements = new ArrayList<>();
+	private boolean startTagOpen = false;
+	private boolean rootElementWritten = false;
+	private boolean closed = false;
+
+	/**
+	 * Creates a new writer writing to an output stream using UTF-8 encoding and XML version 1.0.
+	 *
+	 * @param outputStream output stream to which the XML document should be written
+	 */
+	public DocumentWriter(OutputStream outputStream)
+	{
+		this(outputStream, DEFAULT_ENCODING, DEFAULT_VERSION);
+	}
+
+	/**
+	 * Creates a new writer writing to an output stream.
+	 *
+	 * @param outputStream output stream to which the XML document should be written
+	 * @param encoding     encoding of the document
+	 * @param version      XML version of the document
+	 */
+	public DocumentWriter(OutputStream outputStream, Charset encoding, String version)
+	{
+		this.writer = new OutputStreamWriter(outputStream, encoding);
+		this.serializer = new XMLSerializer(writer);
+		try
+		{
+			serializer.write("<?xml version=\"" + version + "\" encoding=\"" + encoding.displayName() + "\"?>");
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Creates a new writer writing to a file using UTF-8 encoding and XML version 1.0.
+	 *
+	 * @param file file to which the XML document should be written
+	 */
+	public DocumentWriter(File file)
+	{
+		this(openFile(file));
+	}
+
+	/**
+	 * Creates a new writer writing to a file using UTF-8 encoding and XML version 1.0. This constructor is wrapper for the {@link #DocumentWriter(java.io.File)} constructor.
+	 *
+	 * @param fileName filename of file to be written
+	 */
+	public DocumentWriter(String fileName)
+	{
+		this(new File(fileName));
+	}
+
+	/**
+	 * Opens a new element. If no element is open, the new element is the root element of the document.
+	 *
+	 * @param name name of the element
+	 */
+	public void writeStartElement(String name)
+	{
+		try
+		{
+			int indent = prepareChildElement();
+			if(startsOnNewLine())
+				serializer.writeNewLine(indent);
+			markElementWritten();
+
+			serializer.writeStartTag(name);
+			openElements.add(new OpenElement(name));
+			startTagOpen = true;
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Adds an attribute to the element opened last. Attributes can only be written directly after {@link #writeStartElement(String)}.
+	 *
+	 * @param name  name of the attribute
+	 * @param value value of the attribute
+	 */
+	public void writeAttribute(String name, String value)
+	{
+		if(!startTagOpen)
+			throw new IllegalStateException("Attributes can only be written directly after the start of an element.");
+
+		try
+		{
+			serializer.writeAttribute(name, value);
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Writes text into the currently open element.
+	 *
+	 * @param text text to be written
+	 */
+	public void writeText(String text)
+	{
+		if(openElements.isEmpty())
+			throw new IllegalStateException("Text can only be written into an element.");
+
+		try
+		{
+			closeStartTag();
+			OpenElement parent = openElements.get(openElements.size() - 1);
+			serializer.writeText(text, openElements.size() - 1, false);
+			parent.lastChildIsTextNode = true;
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Writes an element and all its children into the currently open element. If no element is open, the element is written as root element of the document.
+	 *
+	 * @param element element to be written
+	 */
+	public void writeElement(Element element)
+	{
+		try
+		{
+			int indent = prepareChildElement();
+			serializer.writeElement(element, indent, startsOnNewLine());
+			markElementWritten();
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Closes the element opened last.
+	 */
+	public void writeEndElement()
+	{
+		if(openElements.isEmpty())
+			throw new IllegalStateException("There is no open element.");
+
+		try
+		{
+			OpenElement element = openElements.remove(openElements.size() - 1);
+			if(startTagOpen)
+			{
+				serializer.closeEmptyElement();
+				startTagOpen = false;
+			}
+			else
+			{
+				if(!element.lastChildIsTextNode)
+					serializer.writeNewLine(openElements.size());
+				serializer.writeEndTag(element.name);
+			}
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Flushes the data written so far to the underlying output stream.
+	 */
+	public void flush()
+	{
+		try
+		{
+			serializer.flushBuffer();
+			writer.flush();
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Closes all open elements and the underlying output stream. This will throw a RuntimeException if no root element has been written.
+	 */
+	public void close()
+	{
+		if(closed)
+			return;
+
+		try
+		{
+			while(!openElements.isEmpty())
+				writeEndElement();
+		}
+		finally
+		{
+			closed = true;
+			try
+			{
+				serializer.flushBuffer();
+				writer.close();
+			}
+			catch(IOException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
+		if(!rootElementWritten)
+			throw new RuntimeException("Document has no root node.");
+	}
+
+	/**
+	 * Closes the start tag of the currently open element (if any) and determines the indent of a new child element.
+	 *
+	 * @return indent of the new child element
+	 * @throws IOException if an I/O error occurs
+	 */
+	private int prepareChildElement() throws IOException
+	{
+		if(openElements.isEmpty())
+		{
+			if(rootElementWritten)
+				throw new IllegalStateException("Document already has a root element.");
+			rootElementWritten = true;
+			return 0;
+		}
+
+		closeStartTag();
+		return openElements.size();
+	}
+
+	/**
+	 * Indicates whether a new child element starts on a new line. This is the case for the root element and for elements not directly following a text node.
+	 *
+	 * @return {@code true} if the element starts on a new line, {@code false} otherwise
+	 */
+	private boolean startsOnNewLine()
+	{
+		return openElements.isEmpty() || !openElements.get(openElements.size() - 1).lastChildIsTextNode;
+	}
+
+	private void markElementWritten()
+	{
+		if(!openElements.isEmpty())
+			openElements.get(openElements.size() - 1).lastChildIsTextNode = false;
+	}
+
+	private void closeStartTag() throws IOException
+	{
+		if(startTagOpen)
+		{
+			serializer.write(">");
+			startTagOpen = false;
+		}
+	}
+
+	private static OutputStream openFile(File file)
+	{
+		try
+		{
+			return new FileOutputStream(file);
+		}
+		catch(FileNotFoundException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Element that has been opened but not yet closed.
+	 */
+	private static final class OpenElement
+	{
+		private final String name;
+		private boolean lastChildIsTextNode = false;
+
+		private OpenElement(String name)
+		{
+			this.name = name;
+		}
+	}
+}
@@ -1,17 +1,22 @@
 package lightdom;
 
 import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.NodeList;
 
-import javax.xml.namespace.QName;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * Represents an element in the DOM tree. An element has a name and optionally an id as well as attributes and children.
@@ -21,18 +26,47 @@ import java.util.Map;
  */
 public class Element implements Node
 {
-	private static final String INDEX_NAME = "lightdom-element-index";
+	static final String USER_DATA_KEY = "lightdom-element";
 
 	private final String name;
 	private String id;
 	private Element parent;
-	private final Map<String, String> attributes = new HashMap<>();
-	private final List<Node> children = new ArrayList<>();
-	private final List<TextNode> textNodes = new ArrayList<>();
-	private final Map<String, List<Element>> elementsByName = new HashMap<>();
-	private final Map<String, Element> elementsById = new HashMap<>();
-	private org.w3c.dom.Node w3cNodeWithIndex = null;
-	private org.w3c.dom.Node w3cNodeWithoutIndex = null;
+	private Node previousSibling = null;
+	private Node nextSibling = null;
+	private int childIndex = -1;
+
+	// attributes are stored in parallel arrays, which are only allocated when the first attribute is added
+	private String[] attributeNames = null;
+	private String[] attributeValues = null;
+	private int attributeCount = 0;
+
+	// children are kept in a doubly linked list, so that they can be inserted and removed at any position in constant time
+	private Node firstChild = null;
+	private Node lastChild = null;
+	private int childCount = 0;
+	private int textNodeCount = 0;
+
+	// the positions of the children, the array for positional access and the list of text nodes are kept up to date while children are appended at the end, other changes invalidate them and they are rebuilt when needed
+	private volatile boolean childIndexesValid = true;
+	private volatile Node[] childArray = null;
+	private volatile List<TextNode> textNodes = Collections.emptyList();
+
+	// indexes of the child elements are built on the first lookup and maintained from then on, they are volatile so that concurrent readers of a completed tree can build them safely
+	private volatile Map<String, List<Element>> elementsByName = null;
+	private volatile Map<String, Element> elementsById = null;
+
+	// index of the whole tree, shared by all its elements once it has been built
+	private volatile DocumentIndex documentIndex = null;
+	// generated w3c node, which is kept in sync with this element until a node for another owner document is requested
+	private org.w3c.dom.Node w3cNode = null;
+	// true if text has been appended to a text node of this subtree since its generated w3c node has been updated
+	private boolean w3cTextStale = false;
+	private String cachedText = null;
+	// true if the text of this element may be part of the cached text of a parent element, so that changes have to invalidate it
+	private boolean partOfCachedText = false;
+
+	// structural hash code of this element and its descendants, 0 if it has not been computed
+	private int cachedHashCode = 0;
 
 	/**
 	 * Creates a new element.
@@ -67,49 +101,117 @@ public class Element implements Node
 		this.name = name;
 		this.id = id;
 		if(attributes != null && !attributes.isEmpty())
-			this.attributes.putAll(attributes);
-		setIndex("-1");
+		{
+			attributeNames = new String[attributes.size()];
+			attributeValues = new String[attributes.size()];
+			for(Map.Entry<String, String> attribute : attributes.entrySet())
+			{
+				attributeNames[attributeCount] = attribute.getKey();
+				attributeValues[attributeCount] = attribute.getValue();
+				attributeCount++;
+			}
+		}
 	}
 
 	/**
-	 * Creates element based on an instance of org.w3c.dom.Node. This will throw a RuntimeException if the given node is not an instance of org.w3c.dom.Element.
+	 * Creates element based on an instance of org.w3c.dom.Node. This will throw a RuntimeException if the given node is not an instance of org.w3c.dom.Element. Text and CDATA sections become text nodes, adjacent ones are joined, and the children of entity references are imported in place of the references. The tree is traversed iteratively, so deep trees do not overflow the stack.
 	 *
 	 * @param w3cNode  org.w3c.dom.Node to be used to create new element
 	 * @return element based on given org.dom.w3c.Node instance
 	 * @since 1.1.0
 	 */
 	public static Element fromW3CNode(org.w3c.dom.Node w3cNode)
+	{
+		return fromW3CNode(w3cNode, new NameTable());
+	}
+
+	/**
+	 * Creates element based on an instance of org.w3c.dom.Node, canonicalizing names with the given name table. See {@link #fromW3CNode(org.w3c.dom.Node)}.
+	 *
+	 * @param w3cNode   org.w3c.dom.Node to be used to create new element
+	 * @param nameTable name table used to canonicalize element and attribute names
+	 * @return element based on given org.dom.w3c.Node instance
+	 */
+	static Element fromW3CNode(org.w3c.dom.Node w3cNode, NameTable nameTable)
 	{
 		if(w3cNode.getNodeType() != org.w3c.dom.Node.ELEMENT_NODE)
 			throw new RuntimeException("Node must be an element.");
 
-		// create element
-		Element element = new Element(w3cNode.getNodeName());
-
-		// set attributes
-		NamedNodeMap attributesMap = w3cNode.getAttributes();
-		for(int i = 0; i < attributesMap.getLength(); i++)
+		TreeBuilder treeBuilder = new TreeBuilder(WhitespacePolicy.PRESERVE, nameTable);
+		org.w3c.dom.Node node = w3cNode;
+		while(true)
 		{
-			org.w3c.dom.Node attributeNode = attributesMap.item(i);
-			element.setAttribute(attributeNode.getNodeName(), attributeNode.getNodeValue());
-		}
+			// enter node
+			boolean hasChildren = false;
+			switch(node.getNodeType())
+			{
+				case org.w3c.dom.Node.ELEMENT_NODE:
+					startElement(treeBuilder, node);
+					hasChildren = true;
+					break;
+				case org.w3c.dom.Node.TEXT_NODE:
+				case org.w3c.dom.Node.CDATA_SECTION_NODE:
+					treeBuilder.characters(node.getNodeValue());
+					break;
+				case org.w3c.dom.Node.ENTITY_REFERENCE_NODE:
+					hasChildren = true;
+					break;
+			}
 
-		// append child nodes
-		NodeList childNodes = w3cNode.getChildNodes();
-		for(int i = 0; i < childNodes.getLength(); i++)
-		{
-			org.w3c.dom.Node childNode = childNodes.item(i);
-			if(childNode.getNodeType() == org.w3c.dom.Node.ELEMENT_NODE)
+			org.w3c.dom.Node firstChild = hasChildren ? node.getFirstChild() : null;
+			if(firstChild != null)
 			{
-				element.appendChild(Element.fromW3CNode(childNode));
+				node = firstChild;
+				continue;
 			}
-			else if(childNode.getNodeType() == org.w3c.dom.Node.TEXT_NODE)
+
+			// leave node and all ancestors which have no following sibling
+			while(true)
 			{
-				element.appendChild(TextNode.fromW3CNode(childNode));
+				if(node.getNodeType() == org.w3c.dom.Node.ELEMENT_NODE)
+					treeBuilder.endElement();
+				if(node == w3cNode)
+					return treeBuilder.getRootElement();
+
+				org.w3c.dom.Node nextSibling = node.getNextSibling();
+				if(nextSibling != null)
+				{
+					node = nextSibling;
+					break;
+				}
+				node = node.getParentNode();
 			}
 		}
+	}
 
-		return element;
+	/**
+	 * Opens an element for an instance of org.w3c.dom.Element in a tree builder.
+	 *
+	 * @param treeBuilder tree builder
+	 * @param w3cElement  org.w3c.dom.Element
+	 */
+	private static void startElement(TreeBuilder treeBuilder, org.w3c.dom.Node w3cElement)
+	{
+		String id = null;
+		Map<String, String> attributes = null;
+
+		NamedNodeMap attributesMap = w3cElement.getAttributes();
+		int attributeCount = attributesMap == null ? 0 : attributesMap.getLength();
+		if(attributeCount > 0)
+		{
+			NameTable nameTable = treeBuilder.getNameTable();
+			attributes = new HashMap<>(attributeCount * 4 / 3 + 1);
+			for(int i = 0; i < attributeCount; i++)
+			{
+				org.w3c.dom.Node attributeNode = attributesMap.item(i);
+				if("id".equalsIgnoreCase(attributeNode.getNodeName()))
+					id = attributeNode.getNodeValue();
+				else
+					attributes.put(nameTable.intern(attributeNode.getNodeName()), attributeNode.getNodeValue());
+			}
+		}
+
+		treeBuilder.startElement(w3cElement.getNodeName(), id, attributes);
 	}
 
 	/**
@@ -120,44 +222,170 @@ public class Element implements Node
 	 */
 	public org.w3c.dom.Node toW3CNode(org.w3c.dom.Document document)
 	{
-		return toW3CNode(document, false);
+		org.w3c.dom.Node node = w3cNode;
+		if(node == null || node.getOwnerDocument() != document)
+		{
+			node = createW3CNode(document);
+			w3cNode = node;
+
+			// a parent synchronized with another owner document cannot be kept in sync any more
+			if(parent != null)
+				parent.removeW3CNodes(document);
+		}
+		else
+		{
+			updateW3CText();
+		}
+		return node;
 	}
 
 	/**
-	 * Converts node to an instance of org.w3c.dom.Node in the context of the given document.
+	 * Converts this element to an instance of org.w3c.dom.Node, reusing the generated node of any owner document. If there is no generated node, a new owner document is created.
 	 *
-	 * @param document  document in which the new node will be created
-	 * @param keepIndex {@code true} if the index attribute (lightdom specific) should be kept, {@code false} otherwise
 	 * @return instance of org.w3c.dom.Node
-	 * @since 1.1.2
 	 */
-	protected org.w3c.dom.Node toW3CNode(org.w3c.dom.Document document, boolean keepIndex)
+	org.w3c.dom.Node toW3CNode()
+	{
+		org.w3c.dom.Node node = w3cNode;
+		if(node == null)
+			return toW3CNode(new Document().toW3CDocument());
+		updateW3CText();
+		return node;
+	}
+
+	/**
+	 * Marks this element and its parent elements as containing a text node whose generated w3c node lacks appended text. Only elements with a generated node are marked, and marking stops at the first element which is marked already, so appending text takes constant time.
+	 */
+	void w3cTextChanged()
+	{
+		for(Element element = this; element != null && element.w3cNode != null && !element.w3cTextStale; element = element.parent)
+			element.w3cTextStale = true;
+	}
+
+	/**
+	 * Applies appended text to the generated w3c nodes of the text nodes in this subtree. Only the marked elements are walked.
+	 */
+	private void updateW3CText()
 	{
-		if(keepIndex)
+		if(!w3cTextStale)
+			return;
+
+		TreeWalker walker = new TreeWalker(this);
+		while(walker.next())
 		{
-			if(w3cNodeWithIndex == null)
-				w3cNodeWithIndex = createW3CNode(document, true);
-			return w3cNodeWithIndex;
+			Node node = walker.getCurrentNode();
+			if(node instanceof TextNode)
+			{
+				((TextNode)node).updateW3CText();
+			}
+			else if(!walker.isLeaving())
+			{
+				Element element = (Element)node;
+				if(element.w3cTextStale)
+					element.w3cTextStale = false;
+				else
+					walker.skipChildren();
+			}
 		}
-		else
+	}
+
+	/**
+	 * Returns the generated w3c node of this element or text node.
+	 *
+	 * @param node element or text node
+	 * @return generated w3c node or {@code null} if there is none
+	 */
+	private static org.w3c.dom.Node getW3CNode(Node node)
+	{
+		if(node instanceof Element)
+			return ((Element)node).w3cNode;
+		return ((TextNode)node).getW3CNode();
+	}
+
+	/**
+	 * Creates an instance of org.w3c.dom.Node in the context of the given document, including the nodes of all descendants. Generated nodes of descendants which belong to the document are reused, and the new nodes are kept by the elements they have been created for.
+	 *
+	 * @param document document in which the new node will be created
+	 * @return instance of org.w3c.dom.Node
+	 * @since 1.1.3
+	 */
+	private org.w3c.dom.Node createW3CNode(org.w3c.dom.Document document)
+	{
+		// the subtree is walked iteratively, each element keeps its new node, so that its children can be appended to it
+		TreeWalker walker = new TreeWalker(this);
+		while(walker.next())
 		{
-			if(w3cNodeWithoutIndex == null)
-				w3cNodeWithoutIndex = createW3CNode(document, false);
-			return w3cNodeWithoutIndex;
+			Node node = walker.getCurrentNode();
+			if(node instanceof TextNode)
+			{
+				node.getParent().w3cNode.appendChild(node.toW3CNode(document));
+			}
+			else if(!walker.isLeaving())
+			{
+				Element element = (Element)node;
+				if(element != this && element.w3cNode != null && element.w3cNode.getOwnerDocument() == document)
+				{
+					// the generated node of the subtree can be reused
+					element.updateW3CText();
+					walker.skipChildren();
+				}
+				else
+					element.w3cNode = element.createW3CElement(document);
+			}
+			else if(node != this)
+			{
+				// elements are appended when they are complete, so that their parent is not attached yet and the DOM implementation does not check a long chain of ancestors
+				node.getParent().w3cNode.appendChild(((Element)node).w3cNode);
+			}
 		}
+
+		return w3cNode;
 	}
 
 	/**
-	 * Creates an instance of org.w3c.dom.Node in the context of the given document.
+	 * Creates an independent copy of this element as an instance of org.w3c.dom.Node in the context of the given document, including the nodes of all descendants. Unlike {@link #toW3CNode(org.w3c.dom.Document)}, the generated nodes are neither reused nor kept, so changes to the copy do not affect the generated nodes.
 	 *
-	 * @param document  document in which the new node will be created
-	 * @param keepIndex {@code true} if the index attribute (lightdom specific) should be kept, {@code false} otherwise
+	 * @param document document in which the new node will be created
 	 * @return instance of org.w3c.dom.Node
-	 * @since 1.1.3
 	 */
-	private org.w3c.dom.Node createW3CNode(org.w3c.dom.Document document, boolean keepIndex)
+	org.w3c.dom.Node copyToW3CNode(org.w3c.dom.Document document)
+	{
+		// the new nodes of the elements which have been entered but not left yet
+		List<org.w3c.dom.Node> openNodes = new ArrayList<>();
+		org.w3c.dom.Node node = null;
+		TreeWalker walker = new TreeWalker(this);
+		while(walker.next())
+		{
+			Node currentNode = walker.getCurrentNode();
+			if(currentNode instanceof TextNode)
+			{
+				openNodes.get(openNodes.size() - 1).appendChild(document.createTextNode(((TextNode)currentNode).getText()));
+			}
+			else if(!walker.isLeaving())
+			{
+				openNodes.add(((Element)currentNode).createW3CElement(document));
+			}
+			else
+			{
+				// elements are appended when they are complete, like in createW3CNode
+				node = openNodes.remove(openNodes.size() - 1);
+				if(!openNodes.isEmpty())
+					openNodes.get(openNodes.size() - 1).appendChild(node);
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Creates an instance of org.w3c.dom.Element with the name, id and attributes of this element, but without children. The created node carries a reference to this element as user data, which allows mapping it back to this element.
+	 *
+	 * @param document document in which the new node will be created
+	 * @return instance of org.w3c.dom.Element
+	 */
+	private org.w3c.dom.Element createW3CElement(org.w3c.dom.Document document)
 	{
 		org.w3c.dom.Element element = document.createElement(name);
+		element.setUserData(USER_DATA_KEY, this, null);
 
 		// set id (if available)
 		if(getId() != null)
@@ -167,33 +395,54 @@ public class Element implements Node
 		}
 
 		// append attributes
-		for(Map.Entry<String, String> attributeEntry : getAttributes().entrySet())
-		{
-			if(keepIndex || !INDEX_NAME.equals(attributeEntry.getKey()))
-				element.setAttribute(attributeEntry.getKey(), attributeEntry.getValue());
-		}
-
-		// append children
-		for(Node childNode : getChildren())
-		{
-			if(childNode instanceof Element)
-				element.appendChild(((Element)childNode).toW3CNode(document, keepIndex));
-			else
-				element.appendChild((childNode).toW3CNode(document));
-		}
+		for(int i = 0; i < attributeCount; i++)
+			element.setAttribute(attributeNames[i], attributeValues[i]);
 
 		return element;
 	}
 
 	/**
-	 * Removes the generated w3c nodes of this element and its parent elements. This method should be invoken if any structural changes have been made to this element.
+	 * Removes the generated w3c nodes of this element and its parent elements. Changes to this element are applied to the generated w3c nodes directly, so this is only needed if they cannot be kept in sync any more, for example if a child has been converted in the context of another owner document. A parent can only have a generated node if all its children have one, so this stops at the first parent element without generated node.
 	 */
 	protected void removeW3CNodes()
 	{
-		w3cNodeWithIndex = null;
-		w3cNodeWithoutIndex = null;
-		if(parent != null)
-			parent.removeW3CNodes();
+		for(Element element = this; element != null && element.w3cNode != null; element = element.parent)
+			element.w3cNode = null;
+	}
+
+	/**
+	 * Removes the generated w3c nodes of this element and its parent elements if they belong to another owner document than the given one. This is invoked if a child has been converted in the context of the given owner document.
+	 *
+	 * @param document owner document of the child
+	 */
+	void removeW3CNodes(org.w3c.dom.Document document)
+	{
+		if(w3cNode != null && w3cNode.getOwnerDocument() != document)
+			removeW3CNodes();
+	}
+
+	/**
+	 * Applies a changed attribute to the generated w3c node.
+	 *
+	 * @param name  name of the attribute
+	 * @param value new value of the attribute or {@code null} if it has been removed
+	 */
+	private void updateW3CAttribute(String name, String value)
+	{
+		if(w3cNode == null)
+			return;
+
+		org.w3c.dom.Element element = (org.w3c.dom.Element)w3cNode;
+		if(value == null)
+		{
+			element.removeAttribute(name);
+		}
+		else
+		{
+			element.setAttribute(name, value);
+			if("id".equals(name))
+				element.setIdAttribute("id", true);
+		}
 	}
 
 	/**
@@ -205,10 +454,14 @@ public class Element implements Node
 	public void setAttribute(String name, String value)
 	{
 		if("id".equalsIgnoreCase(name))
+		{
 			setId(value);
+		}
 		else
-			attributes.put(name, value);
-		removeW3CNodes();
+		{
+			putAttribute(name, value);
+			attributeChanged(name, value);
+		}
 	}
 
 	/**
@@ -221,8 +474,9 @@ public class Element implements Node
 	{
 		if("id".equalsIgnoreCase(name))
 			return getId();
-		else
-			return attributes.get(name);
+
+		int index = indexOfAttribute(name);
+		return index < 0 ? null : attributeValues[index];
 	}
 
 	/**
@@ -233,7 +487,20 @@ public class Element implements Node
 	 */
 	public byte getAttributeAsByte(String name)
 	{
-		return new Double(getAttribute(name)).byteValue();
+		return (byte)NumberParser.parseInt(getAttribute(name));
+	}
+
+	/**
+	 * Returns attribute with the corresponding name interpreted as byte.
+	 *
+	 * @param name         name of the attribute
+	 * @param defaultValue value to be returned if there is no attribute with the corresponding name or it cannot be interpreted as byte
+	 * @return attribute value as byte or the default value
+	 * @since 1.1.5
+	 */
+	public byte getAttributeAsByte(String name, byte defaultValue)
+	{
+		return (byte)NumberParser.parseInt(getAttribute(name), defaultValue);
 	}
 
 	/**
@@ -244,7 +511,20 @@ public class Element implements Node
 	 */
 	public short getAttributeAsShort(String name)
 	{
-		return new Double(getAttribute(name)).shortValue();
+		return (short)NumberParser.parseInt(getAttribute(name));
+	}
+
+	/**
+	 * Returns attribute with the corresponding name interpreted as short.
+	 *
+	 * @param name         name of the attribute
+	 * @param defaultValue value to be returned if there is no attribute with the corresponding name or it cannot be interpreted as short
+	 * @return attribute value as short or the default value
+	 * @since 1.1.5
+	 */
+	public short getAttributeAsShort(String name, short defaultValue)
+	{
+		return (short)NumberParser.parseInt(getAttribute(name), defaultValue);
 	}
 
 	/**
@@ -255,7 +535,20 @@ public class Element implements Node
 	 */
 	public int getAttributeAsInt(String name)
 	{
-		return new Double(getAttribute(name)).intValue();
+		return NumberParser.parseInt(getAttribute(name));
+	}
+
+	/**
+	 * Returns attribute with the corresponding name interpreted as int.
+	 *
+	 * @param name         name of the attribute
+	 * @param defaultValue value to be returned if there is no attribute with the corresponding name or it cannot be interpreted as int
+	 * @return attribute value as int or the default value
+	 * @since 1.1.5
+	 */
+	public int getAttributeAsInt(String name, int defaultValue)
+	{
+		return NumberParser.parseInt(getAttribute(name), defaultValue);
 	}
 
 	/**
@@ -266,7 +559,20 @@ public class Element implements Node
 	 */
 	public long getAttributeAsLong(String name)
 	{
-		return new Double(getAttribute(name)).longValue();
+		return NumberParser.parseLong(getAttribute(name));
+	}
+
+	/**
+	 * Returns attribute with the corresponding name interpreted as long.
+	 *
+	 * @param name         name of the attribute
+	 * @param defaultValue value to be returned if there is no attribute with the corresponding name or it cannot be interpreted as long
+	 * @return attribute value as long or the default value
+	 * @since 1.1.5
+	 */
+	public long getAttributeAsLong(String name, long defaultValue)
+	{
+		return NumberParser.parseLong(getAttribute(name), defaultValue);
 	}
 
 	/**
@@ -277,7 +583,20 @@ public class Element implements Node
 	 */
 	public float getAttributeAsFloat(String name)
 	{
-		return new Double(getAttribute(name)).floatValue();
+		return (float)NumberParser.parseDouble(getAttribute(name));
+	}
+
+	/**
+	 * Returns attribute with the corresponding name interpreted as float.
+	 *
+	 * @param name         name of the attribute
+	 * @param defaultValue value to be returned if there is no attribute with the corresponding name or it cannot be interpreted as float
+	 * @return attribute value as float or the default value
+	 * @since 1.1.5
+	 */
+	public float getAttributeAsFloat(String name, float defaultValue)
+	{
+		return (float)NumberParser.parseDouble(getAttribute(name), defaultValue);
 	}
 
 	/**
@@ -288,7 +607,20 @@ public class Element implements Node
 	 */
 	public double getAttributeAsDouble(String name)
 	{
-		return Double.parseDouble(getAttribute(name));
+		return NumberParser.parseDouble(getAttribute(name));
+	}
+
+	/**
+	 * Returns attribute with the corresponding name interpreted as double.
+	 *
+	 * @param name         name of the attribute
+	 * @param defaultValue value to be returned if there is no attribute with the corresponding name or it cannot be interpreted as double
+	 * @return attribute value as double or the default value
+	 * @since 1.1.5
+	 */
+	public double getAttributeAsDouble(String name, double defaultValue)
+	{
+		return NumberParser.parseDouble(getAttribute(name), defaultValue);
 	}
 
 	/**
@@ -303,124 +635,354 @@ public class Element implements Node
 	}
 
 	/**
-	 * Returns the map of attributes.
+	 * Returns the map of attributes. The map is a view of the attributes of this element, changes to the map are reflected in the element. Attributes are kept in the order in which they have been added.
 	 *
 	 * @return map of attributes
 	 */
 	public Map<String, String> getAttributes()
 	{
-		return attributes;
+		return new AttributeMap();
+	}
+
+	/**
+	 * Returns the number of attributes of this element, not including the id.
+	 *
+	 * @return number of attributes
+	 */
+	int getAttributeCount()
+	{
+		return attributeCount;
+	}
+
+	/**
+	 * Returns the name of the attribute at the given position.
+	 *
+	 * @param index position of the attribute
+	 * @return name of the attribute
+	 */
+	String getAttributeName(int index)
+	{
+		return attributeNames[index];
+	}
+
+	/**
+	 * Returns the value of the attribute at the given position.
+	 *
+	 * @param index position of the attribute
+	 * @return value of the attribute
+	 */
+	String getAttributeValue(int index)
+	{
+		return attributeValues[index];
+	}
+
+	private int indexOfAttribute(Object name)
+	{
+		for(int i = 0; i < attributeCount; i++)
+		{
+			if(attributeNames[i].equals(name))
+				return i;
+		}
+		return -1;
+	}
+
+	private String putAttribute(String name, String value)
+	{
+		int index = indexOfAttribute(name);
+		if(index >= 0)
+		{
+			String formerValue = attributeValues[index];
+			attributeValues[index] = value;
+			return formerValue;
+		}
+
+		if(attributeNames == null)
+		{
+			attributeNames = new String[2];
+			attributeValues = new String[2];
+		}
+		else if(attributeCount == attributeNames.length)
+		{
+			attributeNames = Arrays.copyOf(attributeNames, attributeCount * 2);
+			attributeValues = Arrays.copyOf(attributeValues, attributeCount * 2);
+		}
+		attributeNames[attributeCount] = name;
+		attributeValues[attributeCount] = value;
+		attributeCount++;
+		return null;
+	}
+
+	private String removeAttribute(int index)
+	{
+		String formerValue = attributeValues[index];
+		attributeCount--;
+		System.arraycopy(attributeNames, index + 1, attributeNames, index, attributeCount - index);
+		System.arraycopy(attributeValues, index + 1, attributeValues, index, attributeCount - index);
+		attributeNames[attributeCount] = null;
+		attributeValues[attributeCount] = null;
+		return formerValue;
 	}
 
 	/**
-	 * Return the text in this element. It traverses the list of all children in the order in which they have been added and recursively invokes the getText method on each of them.
+	 * Return the text in this element. It traverses the list of all children in the order in which they have been added and recursively collects the text of each of them. The text is cached until this element or one of its children is modified.
 	 *
 	 * @return text in this element
 	 */
 	public String getText()
 	{
-		if(textNodes.isEmpty())
+		if(textNodeCount == 0)
 			return null;
 
-		String text = "";
-		for(Node node : children)
+		String text = cachedText;
+		if(text == null)
+		{
+			StringBuilder textBuilder = new StringBuilder();
+			collectText(textBuilder);
+			text = textBuilder.toString();
+			cachedText = text;
+		}
+		return text;
+	}
+
+	/**
+	 * Appends the text of this element to a string builder. Child elements without text nodes do not contribute any text, as described in {@link #getText()}.
+	 *
+	 * @param textBuilder string builder to which the text should be appended
+	 */
+	private void collectText(StringBuilder textBuilder)
+	{
+		TreeWalker walker = new TreeWalker(this);
+		while(walker.next())
 		{
+			Node node = walker.getCurrentNode();
 			if(node instanceof TextNode)
 			{
-				text += ((TextNode)node).getText();
+				textBuilder.append(((TextNode)node).getText());
 			}
-			else if(node instanceof Element)
+			else if(!walker.isLeaving())
 			{
-				String tmpText = ((Element)node).getText();
-				if(tmpText != null)
-					text += tmpText;
+				Element element = (Element)node;
+				element.partOfCachedText = true;
+				if(element.textNodeCount == 0)
+				{
+					walker.skipChildren();
+				}
+				else if(element.cachedText != null)
+				{
+					textBuilder.append(element.cachedText);
+					walker.skipChildren();
+				}
 			}
 		}
-		return text;
 	}
 
 	/**
-	 * Returns the text in this element interpreted as byte. This method will throw a NullPointerException if there is no text in this element and a NumberFormatException if it cannot be interpreted as byte.
-	 *
-	 * @return text in this element as byte
+	 * Removes the cached text of this element and its parent elements. This method is invoked if children have been added or removed or the text of a text node has been changed. Every element visited while a text is cached is marked, so if an element has neither a cached text nor a mark, its parent elements do not have a cached text depending on it and they are not walked.
 	 */
-	public byte getTextAsByte()
+	void invalidateText()
 	{
-		return new Double(getText()).byteValue();
+		for(Element element = this; element != null && (element.cachedText != null || element.partOfCachedText); element = element.parent)
+		{
+			element.cachedText = null;
+			element.partOfCachedText = false;
+		}
 	}
 
 	/**
-	 * Returns the text in this element interpreted as short. This method will throw a NullPointerException if there is no text in this element and a NumberFormatException if it cannot be interpreted as short.
-	 *
-	 * @return text in this element as short
+	 * Invalidates the caches of this element and its parent elements after children have been added or removed or the text of a text node has been changed. The generated w3c nodes are updated when the change is made.
 	 */
-	public short getTextAsShort()
+	void childrenChanged()
 	{
-		return new Double(getText()).shortValue();
+		invalidateText();
+		invalidateHashCode();
 	}
 
 	/**
-	 * Returns the text in this element interpreted as int. This method will throw a NullPointerException if there is no text in this element and a NumberFormatException if it cannot be interpreted as int.
+	 * Invalidates the caches of this element and its parent elements and updates the generated w3c node after the id or an attribute of this element has been changed.
 	 *
-	 * @return text in this element as int
+	 * @param name  name of the attribute
+	 * @param value new value of the attribute or {@code null} if it has been removed
 	 */
-	public int getTextAsInt()
+	private void attributeChanged(String name, String value)
 	{
-		return new Double(getText()).intValue();
+		invalidateHashCode();
+		updateW3CAttribute(name, value);
 	}
 
 	/**
-	 * Returns the text in this element interpreted as long. This method will throw a NullPointerException if there is no text in this element and a NumberFormatException if it cannot be interpreted as long.
-	 *
-	 * @return text in this element as long
+	 * Removes the cached hash code of this element and its parent elements. A hash code is only computed together with the hash codes of all descendants, so if an element has no cached hash code, its parent elements do not have one either.
 	 */
-	public long getTextAsLong()
+	private void invalidateHashCode()
 	{
-		return new Double(getText()).longValue();
+		for(Element element = this; element != null && element.cachedHashCode != 0; element = element.parent)
+			element.cachedHashCode = 0;
 	}
 
 	/**
-	 * Returns the text in this element interpreted as float. This method will throw a NullPointerException if there is no text in this element and a NumberFormatException if it cannot be interpreted as float.
+	 * Returns the text in this element interpreted as byte. This method will throw a NullPointerException if there is no text in this element and a NumberFormatException if it cannot be interpreted as byte.
 	 *
-	 * @return text in this element as float
+	 * @return text in this element as byte
 	 */
-	public float getTextAsFloat()
+	public byte getTextAsByte()
 	{
-		return new Double(getText()).floatValue();
+		return (byte)NumberParser.parseInt(getText());
 	}
 
 	/**
-	 * Returns the text in this element interpreted as double. This method will throw a NullPointerException if there is no text in this element and a NumberFormatException if it cannot be interpreted as double.
+	 * Returns the text in this element interpreted as byte.
 	 *
-	 * @return text in this element as double
+	 * @param defaultValue value to be returned if there is no text in this element or it cannot be interpreted as byte
+	 * @return text as byte or the default value
+	 * @since 1.1.5
 	 */
-	public double getTextAsDouble()
+	public byte getTextAsByte(byte defaultValue)
 	{
-		return Double.parseDouble(getText());
+		return (byte)NumberParser.parseInt(getText(), defaultValue);
 	}
 
 	/**
-	 * Returns the text in this element interpreted as boolean.
+	 * Returns the text in this element interpreted as short. This method will throw a NullPointerException if there is no text in this element and a NumberFormatException if it cannot be interpreted as short.
 	 *
-	 * @return text as boolean or {@code false} if there is no text in this element or the text cannot be interpreted as boolean
+	 * @return text in this element as short
 	 */
-	public boolean getTextAsBoolean()
+	public short getTextAsShort()
 	{
-		return Boolean.parseBoolean(getText());
+		return (short)NumberParser.parseInt(getText());
 	}
 
 	/**
-	 * Returns list of all text nodes.
+	 * Returns the text in this element interpreted as short.
 	 *
-	 * @return list of all text nodes in the order in which they have been added
+	 * @param defaultValue value to be returned if there is no text in this element or it cannot be interpreted as short
+	 * @return text as short or the default value
+	 * @since 1.1.5
 	 */
-	public List<TextNode> getTextNodes()
+	public short getTextAsShort(short defaultValue)
 	{
-		return textNodes;
+		return (short)NumberParser.parseInt(getText(), defaultValue);
 	}
 
 	/**
-	 * Returns first element with the corresponding name. If the name contains slashes this method will interpret this as a path to the element.
+	 * Returns the text in this element interpreted as int. This method will throw a NullPointerException if there is no text in this element and a NumberFormatException if it cannot be interpreted as int.
+	 *
+	 * @return text in this element as int
+	 */
+	public int getTextAsInt()
+	{
+		return NumberParser.parseInt(getText());
+	}
+
+	/**
+	 * Returns the text in this element interpreted as int.
+	 *
+	 * @param defaultValue value to be returned if there is no text in this element or it cannot be interpreted as int
+	 * @return text as int or the default value
+	 * @since 1.1.5
+	 */
+	public int getTextAsInt(int defaultValue)
+	{
+		return NumberParser.parseInt(getText(), defaultValue);
+	}
+
+	/**
+	 * Returns the text in this element interpreted as long. This method will throw a NullPointerException if there is no text in this element and a NumberFormatException if it cannot be interpreted as long.
+	 *
+	 * @return text in this element as long
+	 */
+	public long getTextAsLong()
+	{
+		return NumberParser.parseLong(getText());
+	}
+
+	/**
+	 * Returns the text in this element interpreted as long.
+	 *
+	 * @param defaultValue value to be returned if there is no text in this element or it cannot be interpreted as long
+	 * @return text as long or the default value
+	 * @since 1.1.5
+	 */
+	public long getTextAsLong(long defaultValue)
+	{
+		return NumberParser.parseLong(getText(), defaultValue);
+	}
+
+	/**
+	 * Returns the text in this element interpreted as float. This method will throw a NullPointerException if there is no text in this element and a NumberFormatException if it cannot be interpreted as float.
+	 *
+	 * @return text in this element as float
+	 */
+	public float getTextAsFloat()
+	{
+		return (float)NumberParser.parseDouble(getText());
+	}
+
+	/**
+	 * Returns the text in this element interpreted as float.
+	 *
+	 * @param defaultValue value to be returned if there is no text in this element or it cannot be interpreted as float
+	 * @return text as float or the default value
+	 * @since 1.1.5
+	 */
+	public float getTextAsFloat(float defaultValue)
+	{
+		return (float)NumberParser.parseDouble(getText(), defaultValue);
+	}
+
+	/**
+	 * Returns the text in this element interpreted as double. This method will throw a NullPointerException if there is no text in this element and a NumberFormatException if it cannot be interpreted as double.
+	 *
+	 * @return text in this element as double
+	 */
+	public double getTextAsDouble()
+	{
+		return NumberParser.parseDouble(getText());
+	}
+
+	/**
+	 * Returns the text in this element interpreted as double.
+	 *
+	 * @param defaultValue value to be returned if there is no text in this element or it cannot be interpreted as double
+	 * @return text as double or the default value
+	 * @since 1.1.5
+	 */
+	public double getTextAsDouble(double defaultValue)
+	{
+		return NumberParser.parseDouble(getText(), defaultValue);
+	}
+
+	/**
+	 * Returns the text in this element interpreted as boolean.
+	 *
+	 * @return text as boolean or {@code false} if there is no text in this element or the text cannot be interpreted as boolean
+	 */
+	public boolean getTextAsBoolean()
+	{
+		return Boolean.parseBoolean(getText());
+	}
+
+	/**
+	 * Returns list of all text nodes.
+	 *
+	 * @return list of all text nodes in the order of the children list
+	 */
+	public List<TextNode> getTextNodes()
+	{
+		List<TextNode> textNodeList = textNodes;
+		if(textNodeList == null)
+		{
+			textNodeList = new ArrayList<>(textNodeCount);
+			for(Node childNode = firstChild; childNode != null; childNode = childNode.getNextSibling())
+			{
+				if(childNode instanceof TextNode)
+					textNodeList.add((TextNode)childNode);
+			}
+			textNodes = textNodeList;
+		}
+		return textNodeList;
+	}
+
+	/**
+	 * Returns first element with the corresponding name. If the name contains slashes this method will interpret this as a path to the element.
 	 *
 	 * @param name name of the element
 	 * @return first element matching the name or {@code null} if no element matches
@@ -441,7 +1003,7 @@ public class Element implements Node
 	 */
 	public boolean hasChildren()
 	{
-		return !children.isEmpty();
+		return childCount > 0;
 	}
 
 	/**
@@ -452,7 +1014,7 @@ public class Element implements Node
 	 */
 	public boolean hasElementWithName(String name)
 	{
-		return elementsByName.containsKey(name) || getElementByName(name) != null;
+		return getNameIndex().containsKey(name) || getElementByName(name) != null;
 	}
 
 	/**
@@ -463,7 +1025,7 @@ public class Element implements Node
 	 */
 	public boolean hasElementWithId(String id)
 	{
-		return elementsById.containsKey(id);
+		return getIdIndex().containsKey(id);
 	}
 
 	/**
@@ -474,7 +1036,7 @@ public class Element implements Node
 	 */
 	public boolean hasAttributeWithName(String name)
 	{
-		return attributes.containsKey(name);
+		return indexOfAttribute(name) >= 0;
 	}
 
 	/**
@@ -527,7 +1089,7 @@ public class Element implements Node
 			}
 			else
 			{
-				List<Element> result = elementsByName.get(name);
+				List<Element> result = getNameIndex().get(name);
 				if(result == null)
 					return new ArrayList<>();
 				else
@@ -537,7 +1099,7 @@ public class Element implements Node
 	}
 
 	/**
-	 * Retrieves element by Xpath query. This uses the built in XML library for Xpath processing and can be slow.
+	 * Retrieves element by Xpath query. The query is evaluated directly on this element by the native XPath engine. Queries using features not supported by the native engine are processed by the built in XML library, which can be slow. Compiled queries are cached, see {@link CompiledQuery}.
 	 *
 	 * @param query Xpath query to search for elements
 	 * @return first element matching the query or {@code null} if none match.
@@ -545,89 +1107,69 @@ public class Element implements Node
 	 */
 	public Element getElementByQuery(String query)
 	{
-		List<Element> elementList = getElementsByQuery(query);
-		if(elementList.size() == 0)
-			return null;
-		else
-			return elementList.get(0);
+		return CompiledQuery.getCached(query).getElement(this);
+	}
+
+	/**
+	 * Retrieves element by a compiled Xpath query.
+	 *
+	 * @param query compiled Xpath query to search for elements
+	 * @return first element matching the query or {@code null} if none match.
+	 * @since 1.1.5
+	 */
+	public Element getElementByQuery(CompiledQuery query)
+	{
+		return query.getElement(this);
 	}
 
 	/**
-	 * Retrieves elements by Xpath query. This uses the built in XML library for Xpath processing and can be slow.
+	 * Retrieves elements by Xpath query. The query is evaluated directly on this element by the native XPath engine, which supports all axes except the namespace axis, name tests, node type tests, predicates (including positional predicates) and the XPath core function library. Absolute paths start at the root of the tree this element belongs to. Queries using features not supported by the native engine are processed by the built in XML library, which can be slow. Compiled queries are cached, see {@link CompiledQuery}.
 	 *
 	 * @param query Xpath query to search for elements
-	 * @return a list containing all elements matching the query
+	 * @return a list containing all elements matching the query in document order
 	 * @since 1.1.2
 	 */
 	public List<Element> getElementsByQuery(String query)
 	{
-		try
-		{
-			List<Element> elementList = new ArrayList<>();
-
-			Object result = processXPath(this.toW3CNode(new Document().toW3CDocument(), true), query, XPathConstants.NODESET);
-			if(result != null && result instanceof NodeList)
-			{
-				NodeList nodeList = (NodeList)result;
-				for(int i = 0; i < nodeList.getLength(); i++)
-				{
-					if(nodeList.item(i) != null && nodeList.item(i) instanceof org.w3c.dom.Element)
-					{
-						Element element = Element.fromW3CNode(nodeList.item(i));
-
-						// find corresponding element relative to this by traversing the DOM tree by child index
-						String index = element.getIndex();
-						String[] indices = index.split(",");
-
-						Element tmpElement = this;
-						for(int j = 1; j < indices.length; j++)
-						{
-							int childIndex = new Integer(indices[j]);
-							tmpElement = (Element)tmpElement.getChildren().get(childIndex);
-						}
-
-						// add element to list
-						elementList.add(tmpElement);
-					}
-				}
-			}
-
-			return elementList;
-		}
-		catch(Exception e)
-		{
-			throw new RuntimeException(e);
-		}
+		return CompiledQuery.getCached(query).getElements(this);
 	}
 
 	/**
-	 * Returns this element's index.
+	 * Retrieves elements by a compiled Xpath query.
 	 *
-	 * @return this element's index
-	 * @see #setIndex(String)
-	 * @since 1.1.2
+	 * @param query compiled Xpath query to search for elements
+	 * @return a list containing all elements matching the query in document order
+	 * @since 1.1.5
 	 */
-	protected String getIndex()
+	public List<Element> getElementsByQuery(CompiledQuery query)
 	{
-		return getAttribute(INDEX_NAME);
+		return query.getElements(this);
 	}
 
 	/**
-	 * Updates index of this element and all children. The index is a string of comma-separated integers, identifying which number each element has in the children list of its parent. A -1 means that this element has no parent. For example, {@code "-1,3,0,2"} identifies the 3rd element of the 1st element of the 4th element of the root element.
+	 * Returns this element's index. The index is a string of comma-separated integers, identifying which number each element has in the children list of its parent. A -1 means that this element has no parent. For example, {@code "-1,3,0,2"} identifies the 3rd element of the 1st element of the 4th element of the root element. The index is computed from the child positions of this element and its ancestors.
 	 *
-	 * @param index index for this element
+	 * @return this element's index
 	 * @since 1.1.2
 	 */
-	private void setIndex(String index)
+	protected String getIndex()
 	{
-		setAttribute(INDEX_NAME, index);
-		int i = 0;
-		for(Node child : children)
+		int depth = 0;
+		for(Element element = this; element.parent != null; element = element.parent)
+			depth++;
+
+		int[] indices = new int[depth];
+		Element element = this;
+		for(int i = depth - 1; i >= 0; i--)
 		{
-			if(child instanceof Element)
-				((Element)child).setIndex(index + "," + i);
-			i++;
+			indices[i] = element.getChildIndex();
+			element = element.parent;
 		}
+
+		StringBuilder index = new StringBuilder("-1");
+		for(int childIndex : indices)
+			index.append(',').append(childIndex);
+		return index.toString();
 	}
 
 	/**
@@ -638,7 +1180,51 @@ public class Element implements Node
 	 */
 	public Element getElementById(String id)
 	{
-		return elementsById.get(id);
+		return getIdIndex().get(id);
+	}
+
+	/**
+	 * Returns an element with the corresponding id anywhere in the tree this element belongs to, including this element and its ancestors. Unlike {@link #getElementById(String)}, which only considers the children of this element, this method uses an index of the whole tree, which is built on the first call and maintained from then on, so that lookups take constant time. If multiple elements have the same id, it is not defined which one is returned.
+	 *
+	 * @param id id of the element
+	 * @return element with the corresponding id or {@code null} if no such element exists
+	 * @since 1.1.5
+	 */
+	public Element findElementById(String id)
+	{
+		return DocumentIndex.of(this).getElementById(id);
+	}
+
+	/**
+	 * Returns all descendants of this element with the corresponding name in document order. Unlike {@link #getElementsByName(String)}, which only considers the children of this element, this method finds elements at any depth. It uses an index of the whole tree, which is built on the first call and maintained from then on.
+	 *
+	 * @param name name of the elements
+	 * @return list of descendants matching the name in document order or an empty list if none match
+	 * @since 1.1.5
+	 */
+	public List<Element> getDescendantsByName(String name)
+	{
+		return DocumentIndex.of(this).getDescendantsByName(this, name);
+	}
+
+	/**
+	 * Returns the index of the tree this element belongs to.
+	 *
+	 * @return index of the tree or {@code null} if it has not been built
+	 */
+	DocumentIndex getDocumentIndex()
+	{
+		return documentIndex;
+	}
+
+	/**
+	 * Sets the index of the tree this element belongs to.
+	 *
+	 * @param documentIndex index of the tree or {@code null} if the element has been removed from the tree
+	 */
+	void setDocumentIndex(DocumentIndex documentIndex)
+	{
+		this.documentIndex = documentIndex;
 	}
 
 	/**
@@ -649,7 +1235,7 @@ public class Element implements Node
 	public List<Element> getElements()
 	{
 		List<Element> childElements = new ArrayList<>();
-		for(Node child : children)
+		for(Node child = firstChild; child != null; child = child.getNextSibling())
 		{
 			if(child instanceof Element)
 				childElements.add((Element)child);
@@ -658,13 +1244,46 @@ public class Element implements Node
 	}
 
 	/**
-	 * Returns a list of all children in the order in which they have been added.
+	 * Returns a list of all children. The list is a read-only view of the children of this element, except that children can be removed through its iterator. Iterating over the list follows the links between the children, positional access uses an array which is rebuilt on the first access after children have been inserted or removed anywhere but at the end.
 	 *
 	 * @return list of all children
 	 */
 	public List<Node> getChildren()
 	{
-		return children;
+		return new ChildList();
+	}
+
+	/**
+	 * Returns the first child of this element.
+	 *
+	 * @return first child or {@code null} if this element has no children
+	 * @since 1.1.5
+	 */
+	public Node getFirstChild()
+	{
+		return firstChild;
+	}
+
+	/**
+	 * Returns the last child of this element.
+	 *
+	 * @return last child or {@code null} if this element has no children
+	 * @since 1.1.5
+	 */
+	public Node getLastChild()
+	{
+		return lastChild;
+	}
+
+	/**
+	 * Returns the number of children of this element.
+	 *
+	 * @return number of children
+	 * @since 1.1.5
+	 */
+	public int getChildCount()
+	{
+		return childCount;
 	}
 
 	/**
@@ -673,12 +1292,123 @@ public class Element implements Node
 	 * Sets the parent of this element. For any Element instance {@code element} and Node instance {@code node}, {@code node.setParent(element)} has the same effect as {@code element.appendChild(node)}.
 	 */
 	public void setParent(Element parent)
+	{
+		if(parent != null)
+			parent.appendChild(this);
+		else if(this.parent != null)
+			this.parent.removeChild(this);
+	}
+
+	/**
+	 * Updates the reference to the parent of this element and its siblings. This method is invoked by the parent when this element is inserted or removed.
+	 *
+	 * @param parent          new parent of this element or {@code null} if it has been removed
+	 * @param previousSibling new previous sibling
+	 * @param nextSibling     new next sibling
+	 */
+	void link(Element parent, Node previousSibling, Node nextSibling)
 	{
 		this.parent = parent;
+		this.previousSibling = previousSibling;
+		this.nextSibling = nextSibling;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @since 1.1.5
+	 */
+	public Node getPreviousSibling()
+	{
+		return previousSibling;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @since 1.1.5
+	 */
+	public Node getNextSibling()
+	{
+		return nextSibling;
+	}
+
+	/**
+	 * Returns the position of this element in the parent's children list. The positions are updated by the parent when they are needed after children have been inserted or removed.
+	 *
+	 * @return position of this element or -1 if it has no parent
+	 */
+	int getChildIndex()
+	{
 		if(parent == null)
-			setIndex("-1");
+			return -1;
+		parent.updateChildIndexes();
+		return childIndex;
+	}
+
+	/**
+	 * Updates the positions of the children of this element if they have been invalidated by inserting or removing children.
+	 */
+	void updateChildIndexes()
+	{
+		if(childIndexesValid)
+			return;
+
+		int index = 0;
+		for(Node childNode = firstChild; childNode != null; childNode = childNode.getNextSibling())
+			setChildIndex(childNode, index++);
+		childIndexesValid = true;
+	}
+
+	/**
+	 * Returns an array containing the children of this element, building it if it has been invalidated. Only the first {@code childCount} positions of the array are used.
+	 *
+	 * @return array of children
+	 */
+	private Node[] getChildArray()
+	{
+		Node[] children = childArray;
+		if(children == null)
+		{
+			children = new Node[childCount];
+			int index = 0;
+			for(Node childNode = firstChild; childNode != null; childNode = childNode.getNextSibling())
+				children[index++] = childNode;
+			childArray = children;
+		}
+		return children;
+	}
+
+	private static void setChildIndex(Node node, int childIndex)
+	{
+		if(node instanceof Element)
+			((Element)node).childIndex = childIndex;
+		else
+			((TextNode)node).setChildIndex(childIndex);
+	}
+
+	private static void link(Node node, Element parent, Node previousSibling, Node nextSibling)
+	{
+		if(node instanceof Element)
+			((Element)node).link(parent, previousSibling, nextSibling);
+		else
+			((TextNode)node).link(parent, previousSibling, nextSibling);
+	}
+
+	private static void setPreviousSibling(Node node, Node previousSibling)
+	{
+		if(node instanceof Element)
+			((Element)node).previousSibling = previousSibling;
+		else
+			((TextNode)node).setPreviousSibling(previousSibling);
+	}
+
+	private static void setNextSibling(Node node, Node nextSibling)
+	{
+		if(node instanceof Element)
+			((Element)node).nextSibling = nextSibling;
 		else
-			parent.appendChild(this, false);
+			((TextNode)node).setNextSibling(nextSibling);
 	}
 
 	/**
@@ -708,12 +1438,18 @@ public class Element implements Node
 	 */
 	public void setId(String id)
 	{
+		String formerId = this.id;
 		this.id = id;
-		if(parent != null)
+		if(parent != null && parent.elementsById != null)
 		{
-			parent.appendChild(this);
+			if(formerId != null && parent.elementsById.get(formerId) == this)
+				parent.elementsById.remove(formerId);
+			if(id != null)
+				parent.elementsById.put(id, this);
 		}
-		removeW3CNodes();
+		if(documentIndex != null)
+			documentIndex.changeId(this, formerId);
+		attributeChanged("id", id);
 	}
 
 	/**
@@ -727,177 +1463,486 @@ public class Element implements Node
 	}
 
 	/**
-	 * Appends a child node to this element. For any Element instance {@code element} and Node instance {@code node}, {@code node.setParent(element)} has the same effect as {@code element.appendChild(node)}.
+	 * Appends a child node to this element. If the node already has a parent, it is removed from its former parent first. For any Element instance {@code element} and Node instance {@code node}, {@code node.setParent(element)} has the same effect as {@code element.appendChild(node)}.
 	 *
 	 * @param node new child node
 	 */
 	public void appendChild(Node node)
-	{
-		appendChild(node, false);
-	}
-
-	/**
-	 * Appends a child node to this element. For any Element instance {@code element} and Node instance {@code node}, {@code node.setParent(element)} has the same effect as {@code element.appendChild(node, true)}.
-	 *
-	 * @param node            new child node
-	 * @param invokeSetParent {@code true} if this method should invoke the {@link lightdom.Node#setParent(Element)} method, {@code false} otherwise
-	 * @since 1.1.3
-	 */
-	protected void appendChild(Node node, boolean invokeSetParent)
 	{
 		if(node.getParent() != null)
 		{
 			node.getParent().removeChild(node);
 		}
 
-		children.add(node);
-
-		if(invokeSetParent)
-			node.setParent(this);
-
-		if(node instanceof Element)
-		{
-			Element element = (Element)node;
+		linkChild(node, null);
 
-			List<Element> elementList = elementsByName.get(element.getName());
-			if(elementList == null)
-			{
-				elementList = new ArrayList<>();
-				elementsByName.put(element.getName(), elementList);
-			}
-			elementList.add(element);
+		childrenChanged();
+	}
 
-			if(element.getId() != null)
-			{
-				elementsById.put(element.getId(), element);
-			}
+	/**
+	 * Appends a child node to an element of a tree which is being built. The node must not have a parent, and no caches of this element and its parents are invalidated, so this must only be used while the tree is not visible to other code yet.
+	 *
+	 * @param node new child node
+	 */
+	void appendNewChild(Node node)
+	{
+		linkChild(node, null);
+	}
 
-			// update index
-			element.setIndex(getIndex() + "," + (children.size() - 1));
-		}
+	/**
+	 * Appends multiple child nodes to this element in the order of the collection. Nodes which already have a parent are removed from their former parent first. The caches of this element and its parents are invalidated only once, so appending many children takes linear time.
+	 *
+	 * @param nodes new child nodes
+	 * @since 1.1.5
+	 */
+	public void appendChildren(Collection<? extends Node> nodes)
+	{
+		if(nodes.isEmpty())
+			return;
 
-		if(node instanceof TextNode)
+		// the nodes are copied first, as the collection may be a view of children which are moved
+		Node[] newChildren = nodes.toArray(new Node[nodes.size()]);
+		for(Node node : newChildren)
 		{
-			textNodes.add((TextNode)node);
+			if(node.getParent() != null)
+				node.getParent().removeChild(node);
+			linkChild(node, null);
 		}
 
-		removeW3CNodes();
+		childrenChanged();
 	}
 
 	/**
-	 * Removes child node from this element.
+	 * Inserts a child node at a position in the children list of this element. If the node already has a parent, it is removed from its former parent first, so if it is a child of this element already, the position refers to the children list without the node. This will throw an IndexOutOfBoundsException if the position is less than 0 or greater than the number of children.
+	 *
+	 * @param index position at which the node is inserted
+	 * @param node  new child node
+	 * @since 1.1.5
+	 */
+	public void insertChild(int index, Node node)
+	{
+		// the index is checked before the node is removed from its former parent, so nothing is changed if it is invalid
+		int size = node.getParent() == this ? childCount - 1 : childCount;
+		if(index < 0 || index > size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+		if(node.getParent() != null)
+			node.getParent().removeChild(node);
+
+		linkChild(node, index == childCount ? null : getChild(index));
+
+		childrenChanged();
+	}
+
+	/**
+	 * Replaces a child of this element by another node. If the new node already has a parent, it is removed from its former parent first. This will throw an IllegalArgumentException if the node to be replaced is not a child of this element.
+	 *
+	 * @param node        new child node
+	 * @param formerChild child to be replaced
+	 * @return the replaced child
+	 * @since 1.1.5
+	 */
+	public Node replaceChild(Node node, Node formerChild)
+	{
+		if(formerChild.getParent() != this)
+			throw new IllegalArgumentException("Node to be replaced is not a child of this element.");
+		if(node == formerChild)
+			return formerChild;
+
+		if(node.getParent() != null)
+			node.getParent().removeChild(node);
+
+		Node referenceNode = formerChild.getNextSibling();
+		unlinkChild(formerChild);
+		linkChild(node, referenceNode);
+
+		childrenChanged();
+		return formerChild;
+	}
+
+	/**
+	 * Returns the child at a position. The array of children is used if it is available, otherwise the children list is traversed from the nearer end.
+	 *
+	 * @param index position of the child
+	 * @return child at the position
+	 */
+	private Node getChild(int index)
+	{
+		Node[] children = childArray;
+		if(children != null)
+			return children[index];
+
+		Node childNode;
+		if(index < childCount / 2)
+		{
+			childNode = firstChild;
+			for(int i = 0; i < index; i++)
+				childNode = childNode.getNextSibling();
+		}
+		else
+		{
+			childNode = lastChild;
+			for(int i = childCount - 1; i > index; i--)
+				childNode = childNode.getPreviousSibling();
+		}
+		return childNode;
+	}
+
+	/**
+	 * Inserts a child node before an existing child of this element. If the node already has a parent, it is removed from its former parent first. This will throw an IllegalArgumentException if the reference node is not a child of this element.
+	 *
+	 * @param node          new child node
+	 * @param referenceNode child before which the new node is inserted or {@code null} to append the new node at the end
+	 * @since 1.1.5
+	 */
+	public void insertBefore(Node node, Node referenceNode)
+	{
+		if(referenceNode == null)
+		{
+			appendChild(node);
+			return;
+		}
+		if(referenceNode.getParent() != this)
+			throw new IllegalArgumentException("Reference node is not a child of this element.");
+		if(node == referenceNode)
+			return;
+
+		if(node.getParent() != null)
+			node.getParent().removeChild(node);
+
+		linkChild(node, referenceNode);
+
+		childrenChanged();
+	}
+
+	/**
+	 * Inserts a child node after an existing child of this element. If the node already has a parent, it is removed from its former parent first. This will throw an IllegalArgumentException if the reference node is not a child of this element.
+	 *
+	 * @param node          new child node
+	 * @param referenceNode child after which the new node is inserted or {@code null} to insert the new node at the beginning
+	 * @since 1.1.5
+	 */
+	public void insertAfter(Node node, Node referenceNode)
+	{
+		if(referenceNode != null && referenceNode.getParent() != this)
+			throw new IllegalArgumentException("Reference node is not a child of this element.");
+		if(node == referenceNode)
+			return;
+
+		if(node.getParent() != null)
+			node.getParent().removeChild(node);
+
+		linkChild(node, referenceNode == null ? firstChild : referenceNode.getNextSibling());
+
+		childrenChanged();
+	}
+
+	/**
+	 * Returns the index of the child elements by name, building it if it does not exist yet.
+	 *
+	 * @return child elements by name
+	 */
+	private Map<String, List<Element>> getNameIndex()
+	{
+		Map<String, List<Element>> nameIndex = elementsByName;
+		if(nameIndex == null)
+		{
+			nameIndex = new HashMap<>();
+			for(Node childNode = firstChild; childNode != null; childNode = childNode.getNextSibling())
+			{
+				if(childNode instanceof Element)
+					addToNameIndex(nameIndex, (Element)childNode);
+			}
+			elementsByName = nameIndex;
+		}
+		return nameIndex;
+	}
+
+	/**
+	 * Returns the child elements with the specified name from the index of the child elements by name, without building the index if it does not exist yet.
+	 *
+	 * @param name name of the child elements
+	 * @return child elements with the specified name or {@code null} if the index does not exist
+	 */
+	List<Element> getIndexedElementsByName(String name)
+	{
+		Map<String, List<Element>> nameIndex = elementsByName;
+		if(nameIndex == null)
+			return null;
+		List<Element> result = nameIndex.get(name);
+		return result == null ? Collections.<Element>emptyList() : result;
+	}
+
+	private static void addToNameIndex(Map<String, List<Element>> nameIndex, Element element)
+	{
+		List<Element> elementList = nameIndex.get(element.getName());
+		if(elementList == null)
+		{
+			elementList = new ArrayList<>(1);
+			nameIndex.put(element.getName(), elementList);
+		}
+		elementList.add(element);
+	}
+
+	/**
+	 * Returns the index of the child elements by id, building it if it does not exist yet.
+	 *
+	 * @return child elements by id
+	 */
+	private Map<String, Element> getIdIndex()
+	{
+		Map<String, Element> idIndex = elementsById;
+		if(idIndex == null)
+		{
+			idIndex = new HashMap<>();
+			for(Node childNode = firstChild; childNode != null; childNode = childNode.getNextSibling())
+			{
+				if(childNode instanceof Element && ((Element)childNode).getId() != null)
+					idIndex.put(((Element)childNode).getId(), (Element)childNode);
+			}
+			elementsById = idIndex;
+		}
+		return idIndex;
+	}
+
+	/**
+	 * Removes child node from this element. Nothing happens if the node is not a child of this element.
 	 *
 	 * @param node child node to be removed
 	 */
 	public void removeChild(Node node)
 	{
-		// get child index
-		int formerChildIndex = -1;
-		for(Node childNode : children)
+		if(node.getParent() != this)
+			return;
+
+		unlinkChild(node);
+
+		childrenChanged();
+	}
+
+	/**
+	 * Removes all children accepted by a filter from this element. The children are visited in order and the caches of this element and its parents are invalidated only once, so removing many children takes linear time.
+	 *
+	 * @param filter filter accepting the children to be removed
+	 * @return number of removed children
+	 * @since 1.1.5
+	 */
+	public int removeChildren(NodeFilter filter)
+	{
+		int removedChildren = 0;
+		Node childNode = firstChild;
+		while(childNode != null)
 		{
-			if(childNode == node)
-				break;
-			else
-				formerChildIndex++;
+			Node nextChildNode = childNode.getNextSibling();
+			if(filter.accept(childNode))
+			{
+				unlinkChild(childNode);
+				removedChildren++;
+			}
+			childNode = nextChildNode;
+		}
+
+		if(removedChildren > 0)
+		{
+			childrenChanged();
 		}
+		return removedChildren;
+	}
 
-		// remove child
-		node.setParent(null);
-		children.remove(node);
+	/**
+	 * Links a node into the children list of this element and updates the positions and indexes. The node must not have a parent. The text and W3C caches are not invalidated.
+	 *
+	 * @param node          new child node
+	 * @param referenceNode child before which the new node is inserted or {@code null} to append the new node at the end
+	 */
+	private void linkChild(Node node, Node referenceNode)
+	{
+		Node previousNode = referenceNode == null ? lastChild : referenceNode.getPreviousSibling();
+		link(node, this, previousNode, referenceNode);
+		if(previousNode == null)
+			firstChild = node;
+		else
+			setNextSibling(previousNode, node);
+		if(referenceNode == null)
+			lastChild = node;
+		else
+			setPreviousSibling(referenceNode, node);
+		childCount++;
 
-		// update index of younger children
-		for(int i = formerChildIndex; i < children.size(); i++)
+		// appending at the end keeps positions valid, inserting anywhere else invalidates them
+		boolean appended = referenceNode == null;
+		if(appended)
+		{
+			if(childIndexesValid)
+				setChildIndex(node, childCount - 1);
+			Node[] children = childArray;
+			if(children != null)
+			{
+				if(children.length < childCount)
+				{
+					children = Arrays.copyOf(children, Math.max(childCount, children.length * 2));
+					childArray = children;
+				}
+				children[childCount - 1] = node;
+			}
+		}
+		else
 		{
-			Node childNode = children.get(i);
-			if(childNode instanceof Element)
-				((Element)childNode).setIndex(getIndex() + "," + i);
+			childIndexesValid = false;
+			childArray = null;
 		}
 
 		if(node instanceof Element)
 		{
 			Element element = (Element)node;
 
-			List<Element> childrenWithSameName = getElementsByName(element.getName());
-			if(childrenWithSameName != null)
+			if(elementsByName != null)
 			{
-				childrenWithSameName.remove(element);
-				if(childrenWithSameName.isEmpty())
-					elementsByName.remove(element.getName());
+				if(appended)
+					addToNameIndex(elementsByName, element);
+				else
+					elementsByName = null;
 			}
+			if(elementsById != null && element.getId() != null)
+				elementsById.put(element.getId(), element);
 
-			if(element.getId() != null)
-				elementsById.remove(element.getId());
+			if(documentIndex != null)
+				documentIndex.addSubtree(element);
+			else if(element.documentIndex != null)
+				DocumentIndex.clearSubtree(element);
 		}
 
+		// insert a corresponding node into the generated w3c node
+		if(w3cNode != null)
+			w3cNode.insertBefore(node.toW3CNode(w3cNode.getOwnerDocument()), referenceNode == null ? null : getW3CNode(referenceNode));
+
 		if(node instanceof TextNode)
 		{
-			textNodes.remove(node);
+			textNodeCount++;
+			List<TextNode> textNodeList = textNodes;
+			if(textNodeList != null)
+			{
+				if(!appended)
+					textNodes = null;
+				else if(textNodeList.isEmpty())
+					textNodes = new ArrayList<>(Collections.singletonList((TextNode)node));
+				else
+					textNodeList.add((TextNode)node);
+			}
 		}
-
-		removeW3CNodes();
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Unlinks a child node from the children list of this element and updates the positions and indexes. The text and W3C caches are not invalidated.
 	 *
-	 * Writes this element and all its children in XML notation.
+	 * @param node child node to be removed
 	 */
-	public void write(Writer writer, int indent, boolean newLine) throws IOException
+	private void unlinkChild(Node node)
 	{
-		if(newLine)
+		// remove the corresponding node from the generated w3c node, the child keeps its generated node
+		if(w3cNode != null)
 		{
-			writer.write("\n");
-			for(int i = 0; i < indent; i++)
-				writer.write("\t");
+			org.w3c.dom.Node childW3CNode = getW3CNode(node);
+			if(childW3CNode != null && childW3CNode.getParentNode() == w3cNode)
+				w3cNode.removeChild(childW3CNode);
 		}
 
-		writer.write("<" + name);
-		if(id != null)
-			writer.write(" id=\"" + Document.encodeValueForWriting(id) + "\"");
-
-		for(Map.Entry<String, String> attribute : attributes.entrySet())
+		Node previousNode = node.getPreviousSibling();
+		Node nextNode = node.getNextSibling();
+		if(previousNode == null)
+			firstChild = nextNode;
+		else
+			setNextSibling(previousNode, nextNode);
+		if(nextNode == null)
+			lastChild = previousNode;
+		else
+			setPreviousSibling(nextNode, previousNode);
+		link(node, null, null, null);
+		setChildIndex(node, -1);
+		childCount--;
+
+		// removing the last child keeps positions valid, removing any other child invalidates them
+		boolean removedLast = nextNode == null;
+		if(removedLast)
 		{
-			if(!INDEX_NAME.equals(attribute.getKey()))
-				writer.write(" " + Document.encodeValueForWriting(attribute.getKey()) + "=\"" + Document.encodeValueForWriting(attribute.getValue()) + "\"");
+			Node[] children = childArray;
+			if(children != null)
+				children[childCount] = null;
 		}
-
-		if(!hasChildren())
+		else
 		{
-			writer.write("/>");
+			childIndexesValid = false;
+			childArray = null;
 		}
-		else
+
+		if(node instanceof Element)
 		{
-			writer.write(">");
-			boolean lastElementIsTextNode = false;
-			for(Node childNode : children)
+			Element element = (Element)node;
+
+			if(elementsByName != null)
 			{
-				if(childNode instanceof TextNode)
+				List<Element> childrenWithSameName = elementsByName.get(element.getName());
+				if(childrenWithSameName != null && childrenWithSameName.get(childrenWithSameName.size() - 1) == element)
 				{
-					childNode.write(writer, indent, false);
-					lastElementIsTextNode = true;
+					childrenWithSameName.remove(childrenWithSameName.size() - 1);
+					if(childrenWithSameName.isEmpty())
+						elementsByName.remove(element.getName());
 				}
 				else
 				{
-					childNode.write(writer, indent + 1, !lastElementIsTextNode);
-					lastElementIsTextNode = false;
+					// removing an element from the middle of the list would take linear time, the index is rebuilt instead when it is needed
+					elementsByName = null;
 				}
 			}
 
-			if(lastElementIsTextNode)
-			{
-				writer.write("</" + name + ">");
-			}
-			else
+			if(elementsById != null && element.getId() != null && elementsById.get(element.getId()) == element)
+				elementsById.remove(element.getId());
+
+			if(documentIndex != null)
+				documentIndex.removeSubtree(element);
+		}
+
+		if(node instanceof TextNode)
+		{
+			textNodeCount--;
+			List<TextNode> textNodeList = textNodes;
+			if(textNodeList != null)
 			{
-				writer.write("\n");
-				for(int i = 0; i < indent; i++)
-					writer.write("\t");
-				writer.write("</" + name + ">");
+				if(textNodeList.get(textNodeList.size() - 1) == node)
+					textNodeList.remove(textNodeList.size() - 1);
+				else
+					textNodes = null;
 			}
 		}
 	}
 
-	/** {@inheritDoc} */
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Writes this element and all its children in XML notation.
+	 */
+	public void write(Writer writer, int indent, boolean newLine) throws IOException
+	{
+		XMLSerializer serializer = new XMLSerializer(writer);
+		serializer.writeElement(this, indent, newLine);
+		serializer.flushBuffer();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @since 1.1.5
+	 */
+	public boolean accept(NodeVisitor visitor)
+	{
+		return TreeWalker.walk(this, visitor);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Two elements are equal if they have the same name, id and attributes and their children are equal and in the same order. The trees are compared iteratively and the comparison stops at the first difference.
+	 */
 	@Override
 	public boolean equals(Object o)
 	{
@@ -905,7 +1950,53 @@ public class Element implements Node
 		if(o == null) return false;
 		if(!(o instanceof Element)) return false;
 
-		Element element = (Element)o;
+		// traverse both trees in parallel, as all compared elements have the same number of children, the traversals stay aligned
+		Node node = this;
+		Node otherNode = (Element)o;
+		while(true)
+		{
+			if(node instanceof Element)
+			{
+				if(!(otherNode instanceof Element)) return false;
+				Element element = (Element)node;
+				Element otherElement = (Element)otherNode;
+				if(!element.equalsIgnoringChildren(otherElement)) return false;
+
+				if(element.firstChild != null)
+				{
+					node = element.firstChild;
+					otherNode = otherElement.firstChild;
+					continue;
+				}
+			}
+			else if(!node.equals(otherNode))
+			{
+				return false;
+			}
+
+			// continue with the next sibling of the node or of its closest ancestor
+			while(node != this && node.getNextSibling() == null)
+			{
+				node = node.getParent();
+				otherNode = otherNode.getParent();
+			}
+			if(node == this)
+				return true;
+			node = node.getNextSibling();
+			otherNode = otherNode.getNextSibling();
+		}
+	}
+
+	/**
+	 * Compares name, id, attributes and number of children of this element with another element.
+	 *
+	 * @param element element to be compared
+	 * @return {@code true} if name, id, attributes and number of children are equal, {@code false} otherwise
+	 */
+	private boolean equalsIgnoringChildren(Element element)
+	{
+		// different hash codes imply different subtrees
+		if(cachedHashCode != 0 && element.cachedHashCode != 0 && cachedHashCode != element.cachedHashCode) return false;
 
 		// compare name
 		if(!name.equals(element.getName())) return false;
@@ -914,40 +2005,276 @@ public class Element implements Node
 		if((id == null && element.getId() != null) || (id != null && !id.equals(element.getId()))) return false;
 
 		// compare attributes
-		if(attributes.size() != element.getAttributes().size()) return false;
-		for(Map.Entry<String, String> attributeEntry : attributes.entrySet())
+		if(attributeCount != element.attributeCount) return false;
+		for(int i = 0; i < attributeCount; i++)
 		{
-			if(!attributeEntry.getValue().equals(element.getAttribute(attributeEntry.getKey()))) return false;
+			int index = element.indexOfAttribute(attributeNames[i]);
+			if(index < 0 || !attributeValues[i].equals(element.attributeValues[index])) return false;
 		}
 
-		// compare children
-		if(children.size() != element.getChildren().size()) return false;
-		ArrayList<Node> equalChildren = new ArrayList<>(children);
-		equalChildren.retainAll(element.getChildren());
-		if(equalChildren.size() != children.size())
-			return false;
-
-		return true;
+		// compare number of children
+		return childCount == element.childCount;
 	}
 
 	/**
-	 * Performs a lookup using an Xpath query.
+	 * {@inheritDoc}
 	 *
-	 * @param node       instance of org.w3c.dom.Node on which the query should be executed
-	 * @param expression Xpath query to be executed
-	 * @param returnType expected return type of the query
-	 * @return result of the Xpath query.
-	 * @since 1.1.2
+	 * The hash code is computed from the name, id, attributes and children of this element, consistent with {@link #equals(Object)}. It is cached until this element or one of its descendants is modified.
+	 */
+	@Override
+	public int hashCode()
+	{
+		int hashCode = cachedHashCode;
+		if(hashCode == 0)
+		{
+			computeHashCodes();
+			hashCode = cachedHashCode;
+		}
+		return hashCode;
+	}
+
+	/**
+	 * Computes the hash codes of this element and all its descendants which have no cached hash code. The tree is traversed iteratively, each element is computed after its children.
+	 */
+	private void computeHashCodes()
+	{
+		Node node = this;
+		while(true)
+		{
+			// descend to the first child as long as the hash code is missing
+			if(node instanceof Element && ((Element)node).cachedHashCode == 0 && ((Element)node).firstChild != null)
+			{
+				node = ((Element)node).firstChild;
+				continue;
+			}
+
+			if(node instanceof Element)
+				((Element)node).computeHashCode();
+
+			// all children of an element are computed when its last child has been computed
+			while(node != this && node.getNextSibling() == null)
+			{
+				node = node.getParent();
+				((Element)node).computeHashCode();
+			}
+			if(node == this)
+				return;
+			node = node.getNextSibling();
+		}
+	}
+
+	/**
+	 * Computes the hash code of this element from the hash codes of its children, which must be computed already.
+	 */
+	private void computeHashCode()
+	{
+		if(cachedHashCode != 0)
+			return;
+
+		int hashCode = name.hashCode();
+		hashCode = 31 * hashCode + (id == null ? 0 : id.hashCode());
+
+		// the order of the attributes does not matter
+		int attributesHashCode = 0;
+		for(int i = 0; i < attributeCount; i++)
+			attributesHashCode += attributeNames[i].hashCode() ^ attributeValues[i].hashCode();
+		hashCode = 31 * hashCode + attributesHashCode;
+
+		for(Node childNode = firstChild; childNode != null; childNode = childNode.getNextSibling())
+			hashCode = 31 * hashCode + childNode.hashCode();
+
+		// 0 marks a missing hash code
+		cachedHashCode = hashCode == 0 ? 1 : hashCode;
+	}
+
+	/**
+	 * Map view of the attributes of this element. Changes to the map are reflected in the element and vice versa.
+	 */
+	private final class AttributeMap extends AbstractMap<String, String>
+	{
+		@Override
+		public int size()
+		{
+			return attributeCount;
+		}
+
+		@Override
+		public boolean containsKey(Object key)
+		{
+			return indexOfAttribute(key) >= 0;
+		}
+
+		@Override
+		public String get(Object key)
+		{
+			int index = indexOfAttribute(key);
+			return index < 0 ? null : attributeValues[index];
+		}
+
+		@Override
+		public String put(String key, String value)
+		{
+			if(key == null || value == null)
+				throw new NullPointerException();
+
+			String formerValue = putAttribute(key, value);
+			attributeChanged(key, value);
+			return formerValue;
+		}
+
+		@Override
+		public String remove(Object key)
+		{
+			int index = indexOfAttribute(key);
+			if(index < 0)
+				return null;
+
+			String formerValue = removeAttribute(index);
+			attributeChanged((String)key, null);
+			return formerValue;
+		}
+
+		@Override
+		public void clear()
+		{
+			while(attributeCount > 0)
+			{
+				String name = attributeNames[attributeCount - 1];
+				removeAttribute(attributeCount - 1);
+				attributeChanged(name, null);
+			}
+		}
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet()
+		{
+			return new AbstractSet<Map.Entry<String, String>>()
+			{
+				@Override
+				public int size()
+				{
+					return attributeCount;
+				}
+
+				@Override
+				public Iterator<Map.Entry<String, String>> iterator()
+				{
+					return new AttributeIterator();
+				}
+			};
+		}
+	}
+
+	/**
+	 * Iterator over the attributes of this element.
+	 */
+	private final class AttributeIterator implements Iterator<Map.Entry<String, String>>
+	{
+		private int nextIndex = 0;
+		private int lastIndex = -1;
+
+		@Override
+		public boolean hasNext()
+		{
+			return nextIndex < attributeCount;
+		}
+
+		@Override
+		public Map.Entry<String, String> next()
+		{
+			if(nextIndex >= attributeCount)
+				throw new NoSuchElementException();
+
+			lastIndex = nextIndex++;
+			final int index = lastIndex;
+			return new AbstractMap.SimpleEntry<String, String>(attributeNames[index], attributeValues[index])
+			{
+				@Override
+				public String setValue(String value)
+				{
+					if(value == null)
+						throw new NullPointerException();
+
+					attributeValues[index] = value;
+					attributeChanged(getKey(), value);
+					return super.setValue(value);
+				}
+			};
+		}
+
+		@Override
+		public void remove()
+		{
+			if(lastIndex < 0)
+				throw new IllegalStateException();
+
+			String name = attributeNames[lastIndex];
+			removeAttribute(lastIndex);
+			attributeChanged(name, null);
+			nextIndex = lastIndex;
+			lastIndex = -1;
+		}
+	}
+
+	/**
+	 * List view of the children of this element. Iteration follows the links between the children, positional access uses the array of children.
 	 */
-	private static Object processXPath(org.w3c.dom.Node node, String expression, QName returnType)
+	private final class ChildList extends AbstractList<Node>
 	{
-		try
+		@Override
+		public int size()
 		{
-			return XPathFactory.newInstance().newXPath().compile(expression).evaluate(node, returnType);
+			return childCount;
 		}
-		catch(Exception e)
+
+		@Override
+		public Node get(int index)
 		{
-			throw new RuntimeException(e);
+			if(index < 0 || index >= childCount)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + childCount);
+			return getChildArray()[index];
+		}
+
+		@Override
+		public Iterator<Node> iterator()
+		{
+			return new ChildIterator();
+		}
+	}
+
+	/**
+	 * Iterator over the children of this element following the links between the children.
+	 */
+	private final class ChildIterator implements Iterator<Node>
+	{
+		private Node nextNode = firstChild;
+		private Node lastNode = null;
+
+		@Override
+		public boolean hasNext()
+		{
+			return nextNode != null;
+		}
+
+		@Override
+		public Node next()
+		{
+			if(nextNode == null)
+				throw new NoSuchElementException();
+
+			lastNode = nextNode;
+			nextNode = nextNode.getNextSibling();
+			return lastNode;
+		}
+
+		@Override
+		public void remove()
+		{
+			if(lastNode == null)
+				throw new IllegalStateException();
+
+			removeChild(lastNode);
+			lastNode = null;
 		}
 	}
 }
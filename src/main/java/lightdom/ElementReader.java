@@ -0,0 +1,362 @@
+package lightdom;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the elements matching a path from an XML document one at a time, without building the whole document. Only the subtree of the element currently returned is kept in memory, so record-oriented documents of any size can be processed with constant memory use.
+ * <p>
+ * The path is a list of element names separated by slashes, starting with the name of the root element. For example, the path {@code catalog/book} matches all {@code book} elements directly below the root element {@code catalog}. A {@code *} matches elements with any name. The returned elements are detached from their parent.
+ * <p>
+ * Example:
+ * <pre>
+ * ElementReader reader = new ElementReader(new File("books.xml"), "catalog/book");
+ * try
+ * {
+ *     while(reader.hasNext())
+ *         process(reader.next());
+ * }
+ * finally
+ * {
+ *     reader.close();
+ * }
+ * </pre>
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+public class ElementReader implements Iterator<Element>, Closeable
+{
+	private final String[] path;
+	private final XMLStreamReader xmlStreamReader;
+	private final InputStream ownedInputStream;
+	private final TreeBuilder treeBuilder;
+
+	private int depth = 0;
+	private int matchedDepth = 0;
+	private Element nextElement = null;
+	private boolean finished = false;
+
+	/**
+	 * Creates a new reader reading the elements matching the path from an input stream. The input stream is not closed by this reader.
+	 *
+	 * @param inputStream input stream from which the document should be read
+	 * @param path        path of the elements to be read
+	 */
+	public ElementReader(InputStream inputStream, String path)
+	{
+		this(inputStream, path, WhitespacePolicy.STRIP_TABS);
+	}
+
+	/**
+	 * Creates a new reader reading the elements matching the path from an input stream. The input stream is not closed by this reader.
+	 *
+	 * @param inputStream      input stream from which the document should be read
+	 * @param path             path of the elements to be read
+	 * @param whitespacePolicy policy for character data consisting of whitespace
+	 */
+	public ElementReader(InputStream inputStream, String path, WhitespacePolicy whitespacePolicy)
+	{
+		this(inputStream, path, whitespacePolicy, new NameTable(), false);
+	}
+
+	/**
+	 * Creates a new reader reading the elements matching the path from an input stream. The input stream is not closed by this reader.
+	 *
+	 * @param inputStream      input stream from which the document should be read
+	 * @param path             path of the elements to be read
+	 * @param whitespacePolicy policy for character data consisting of whitespace
+	 * @param nameTable        name table used to canonicalize element and attribute names, can be shared with other readers and documents
+	 */
+	public ElementReader(InputStream inputStream, String path, WhitespacePolicy whitespacePolicy, NameTable nameTable)
+	{
+		this(inputStream, path, whitespacePolicy, nameTable, false);
+	}
+
+	/**
+	 * Creates a new reader reading the elements matching the path from a file. The file is closed when the end of the document is reached or {@link #close()} is invoked.
+	 *
+	 * @param file file from which the document should be read
+	 * @param path path of the elements to be read
+	 */
+	public ElementReader(File file, String path)
+	{
+		this(file, path, WhitespacePolicy.STRIP_TABS);
+	}
+
+	/**
+	 * Creates a new reader reading the elements matching the path from a file. The file is closed when the end of the document is reached or {@link #close()} is invoked.
+	 *
+	 * @param file             file from which the document should be read
+	 * @param path             path of the elements to be read
+	 * @param whitespacePolicy policy for character data consisting of whitespace
+	 */
+	public ElementReader(File file, String path, WhitespacePolicy whitespacePolicy)
+	{
+		this(file, path, whitespacePolicy, new NameTable());
+	}
+
+	/**
+	 * Creates a new reader reading the elements matching the path from a file. The file is closed when the end of the document is reached or {@link #close()} is invoked.
+	 *
+	 * @param file             file from which the document should be read
+	 * @param path             path of the elements to be read
+	 * @param whitespacePolicy policy for character data consisting of whitespace
+	 * @param nameTable        name table used to canonicalize element and attribute names, can be shared with other readers and documents
+	 */
+	public ElementReader(File file, String path, WhitespacePolicy whitespacePolicy, NameTable nameTable)
+	{
+		this(openFile(file), path, whitespacePolicy, nameTable, true);
+	}
+
+	/**
+	 * Creates a new reader reading the elements matching the path from a file. This constructor is wrapper for the {@link #ElementReader(java.io.File, String)} constructor.
+	 *
+	 * @param fileName absolute or relative path to the file to be read
+	 * @param path     path of the elements to be read
+	 */
+	public ElementReader(String fileName, String path)
+	{
+		this(new File(fileName), path);
+	}
+
+	/**
+	 * Creates a new reader reading the elements matching the path from a file. This constructor is wrapper for the {@link #ElementReader(java.io.File, String, WhitespacePolicy)} constructor.
+	 *
+	 * @param fileName         absolute or relative path to the file to be read
+	 * @param path             path of the elements to be read
+	 * @param whitespacePolicy policy for character data consisting of whitespace
+	 */
+	public ElementReader(String fileName, String path, WhitespacePolicy whitespacePolicy)
+	{
+		this(new File(fileName), path, whitespacePolicy);
+	}
+
+	/**
+	 * Creates a new reader reading the elements matching the path from a file. This constructor is wrapper for the {@link #ElementReader(java.io.File, String, WhitespacePolicy, NameTable)} constructor.
+	 *
+	 * @param fileName         absolute or relative path to the file to be read
+	 * @param path             path of the elements to be read
+	 * @param whitespacePolicy policy for character data consisting of whitespace
+	 * @param nameTable        name table used to canonicalize element and attribute names, can be shared with other readers and documents
+	 */
+	public ElementReader(String fileName, String path, WhitespacePolicy whitespacePolicy, NameTable nameTable)
+	{
+		this(new File(fileName), path, whitespacePolicy, nameTable);
+	}
+
+	private ElementReader(InputStream inputStream, String path, WhitespacePolicy whitespacePolicy, NameTable nameTable, boolean ownsInputStream)
+	{
+		this.path = splitPath(path);
+		this.treeBuilder = new TreeBuilder(whitespacePolicy, nameTable);
+		this.ownedInputStream = ownsInputStream ? inputStream : null;
+		try
+		{
+			this.xmlStreamReader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+		}
+		catch(XMLStreamException e)
+		{
+			closeInputStream();
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Indicates whether there is another element matching the path. This reads the document up to the end of the next matching element.
+	 *
+	 * @return {@code true} if there is another matching element, {@code false} otherwise
+	 */
+	public boolean hasNext()
+	{
+		if(nextElement == null && !finished)
+			nextElement = readNextElement();
+		return nextElement != null;
+	}
+
+	/**
+	 * Returns the next element matching the path. The reader does not keep any reference to the returned element.
+	 *
+	 * @return next matching element
+	 * @throws NoSuchElementException if there are no more matching elements
+	 */
+	public Element next()
+	{
+		if(!hasNext())
+			throw new NoSuchElementException();
+
+		Element element = nextElement;
+		nextElement = null;
+		return element;
+	}
+
+	/**
+	 * Not supported by this reader.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Closes this reader. If the reader has been created from a file, the file is closed as well.
+	 */
+	public void close()
+	{
+		finished = true;
+		nextElement = null;
+		try
+		{
+			xmlStreamReader.close();
+		}
+		catch(XMLStreamException e)
+		{
+			throw new RuntimeException(e);
+		}
+		finally
+		{
+			closeInputStream();
+		}
+	}
+
+	/**
+	 * Reads the document up to the end of the next element matching the path.
+	 *
+	 * @return next matching element or {@code null} if the end of the document has been reached
+	 */
+	private Element readNextElement()
+	{
+		try
+		{
+			while(xmlStreamReader.hasNext())
+			{
+				switch(xmlStreamReader.next())
+				{
+					case XMLStreamConstants.START_ELEMENT:
+						depth++;
+						if(treeBuilder.getDepth() > 0)
+						{
+							startElement();
+						}
+						else if(matchedDepth == depth - 1 && depth <= path.length && matches(path[depth - 1], xmlStreamReader.getLocalName()))
+						{
+							matchedDepth = depth;
+							if(depth == path.length)
+							{
+								treeBuilder.reset();
+								startElement();
+							}
+						}
+						break;
+					case XMLStreamConstants.END_ELEMENT:
+						if(matchedDepth == depth)
+							matchedDepth--;
+						depth--;
+						if(treeBuilder.getDepth() > 0)
+						{
+							treeBuilder.endElement();
+							if(treeBuilder.getDepth() == 0)
+							{
+								Element element = treeBuilder.getRootElement();
+								treeBuilder.reset();
+								return element;
+							}
+						}
+						break;
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.CDATA:
+					case XMLStreamConstants.SPACE:
+						if(treeBuilder.getDepth() > 0)
+							treeBuilder.characters(xmlStreamReader.getTextCharacters(), xmlStreamReader.getTextStart(), xmlStreamReader.getTextLength());
+						break;
+				}
+			}
+		}
+		catch(XMLStreamException e)
+		{
+			throw new RuntimeException(e);
+		}
+
+		close();
+		return null;
+	}
+
+	/**
+	 * Opens an element in the tree builder based on the current start element event.
+	 */
+	private void startElement()
+	{
+		String id = null;
+		Map<String, String> attributes = new HashMap<>();
+		NameTable nameTable = treeBuilder.getNameTable();
+		for(int i = 0; i < xmlStreamReader.getAttributeCount(); i++)
+		{
+			if("id".equalsIgnoreCase(xmlStreamReader.getAttributeLocalName(i)))
+				id = xmlStreamReader.getAttributeValue(i);
+			else
+				attributes.put(nameTable.intern(xmlStreamReader.getAttributeLocalName(i)), xmlStreamReader.getAttributeValue(i));
+		}
+		treeBuilder.startElement(xmlStreamReader.getLocalName(), id, attributes);
+	}
+
+	private static boolean matches(String pattern, String name)
+	{
+		return "*".equals(pattern) || pattern.equals(name);
+	}
+
+	private static String[] splitPath(String path)
+	{
+		if(path == null)
+			throw new IllegalArgumentException("Path must not be null.");
+
+		while(path.startsWith("/"))
+			path = path.substring(1);
+
+		while(path.endsWith("/"))
+			path = path.substring(0, path.length() - 1);
+
+		if(path.length() == 0)
+			throw new IllegalArgumentException("Path must not be empty.");
+
+		return path.split("/");
+	}
+
+	private static InputStream openFile(File file)
+	{
+		try
+		{
+			return new FileInputStream(file);
+		}
+		catch(FileNotFoundException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void closeInputStream()
+	{
+		try
+		{
+			if(ownedInputStream != null)
+				ownedInputStream.close();
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+}
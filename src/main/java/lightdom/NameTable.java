@@ -0,0 +1,45 @@
+package lightdom;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonicalizes element names and attribute names. Every name is stored once, and equal names returned by {@link #intern(String)} are the same instance, so elements parsed with the same name table share their name strings and names can be compared by identity.
+ * <p>
+ * Each document and each {@link ElementReader} uses its own name table by default. A name table can be shared by multiple documents, also if they are parsed by multiple threads concurrently. A name table keeps all names it has seen, so sharing a name table is only useful for documents with a limited set of names.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+public final class NameTable
+{
+	private final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the canonical instance of a name. If the name table does not contain an equal name yet, the given name is added and returned.
+	 *
+	 * @param name name to be canonicalized
+	 * @return canonical instance of the name
+	 */
+	public String intern(String name)
+	{
+		String canonicalName = names.get(name);
+		if(canonicalName == null)
+		{
+			canonicalName = names.putIfAbsent(name, name);
+			if(canonicalName == null)
+				canonicalName = name;
+		}
+		return canonicalName;
+	}
+
+	/**
+	 * Returns the number of names in this name table.
+	 *
+	 * @return number of names
+	 */
+	public int size()
+	{
+		return names.size();
+	}
+}
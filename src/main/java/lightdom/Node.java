@@ -25,6 +25,22 @@ public interface Node
 	 */
 	Element getParent();
 
+	/**
+	 * Returns the node preceding this node in the children list of its parent.
+	 *
+	 * @return previous sibling or {@code null} if this node is the first child or has no parent
+	 * @since 1.1.5
+	 */
+	Node getPreviousSibling();
+
+	/**
+	 * Returns the node following this node in the children list of its parent.
+	 *
+	 * @return next sibling or {@code null} if this node is the last child or has no parent
+	 * @since 1.1.5
+	 */
+	Node getNextSibling();
+
 	/**
 	 * Converts node to an instance of org.w3c.dom.Node in the context of the given document.
 	 *
@@ -43,4 +59,13 @@ public interface Node
 	 * @throws java.io.IOException if an I/O error occurs
 	 */
 	void write(Writer writer, int indent, boolean newLine) throws IOException;
+
+	/**
+	 * Visits this node and, if it is an element, all its descendants in document order. The subtree is walked iteratively by a {@link TreeWalker}, so trees of any depth can be visited without intermediate lists.
+	 *
+	 * @param visitor visitor receiving the nodes
+	 * @return {@code true} if the whole subtree has been visited, {@code false} if the visitor has stopped the walk
+	 * @since 1.1.5
+	 */
+	boolean accept(NodeVisitor visitor);
 }
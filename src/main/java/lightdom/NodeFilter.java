@@ -0,0 +1,19 @@
+package lightdom;
+
+/**
+ * Decides whether a node is accepted, for example by {@link Element#removeChildren(NodeFilter)}.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+public interface NodeFilter
+{
+	/**
+	 * Indicates whether a node is accepted by this filter.
+	 *
+	 * @param node node to be tested
+	 * @return {@code true} if the node is accepted, {@code false} otherwise
+	 */
+	boolean accept(Node node);
+}
@@ -0,0 +1,37 @@
+package lightdom;
+
+/**
+ * Receives the nodes of a subtree in document order, see {@link Node#accept(NodeVisitor)}. Each element is entered before and left after its children, so that multiple kinds of processing can be combined in a single pass over the tree. The return value of each callback decides whether the walk continues, skips the children of an element or stops.
+ * <p>
+ * The subtree must not be modified while it is visited, except for changes to the visited node which do not affect its position, such as changing attributes or text.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+public interface NodeVisitor
+{
+	/**
+	 * Visits an element before its children.
+	 *
+	 * @param element element being entered
+	 * @return how the walk continues, {@link VisitResult#SKIP_CHILDREN} continues with leaving the element
+	 */
+	VisitResult enterElement(Element element);
+
+	/**
+	 * Visits an element after its children, or directly after entering it if it has no children or they have been skipped.
+	 *
+	 * @param element element being left
+	 * @return how the walk continues
+	 */
+	VisitResult leaveElement(Element element);
+
+	/**
+	 * Visits a text node.
+	 *
+	 * @param textNode text node
+	 * @return how the walk continues
+	 */
+	VisitResult visitText(TextNode textNode);
+}
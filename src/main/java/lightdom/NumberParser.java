@@ -0,0 +1,424 @@
+package lightdom;
+
+/**
+ * Parses numbers from strings and character arrays without creating boxed values. Integers consisting of a sign and digits only are read digit by digit and are exact for the whole range of long. Other values, such as decimals or values in exponent notation, are interpreted as double and then converted, as with {@code new Double(value).intValue()}: decimals are truncated and values out of range are clamped to the minimum or maximum value. Leading and trailing whitespace is ignored.
+ * <p>
+ * The methods taking a character array can be used to parse values directly from the buffer passed to a SAX {@code characters()} callback or returned by {@code XMLStreamReader.getTextCharacters()}, without creating a string. They read the characters in place, only values other than plain integers are copied to a string to be interpreted as double.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+public final class NumberParser
+{
+	// integers with up to 18 digits cannot overflow a long
+	private static final int MAX_SAFE_LONG_DIGITS = 18;
+
+	// integers with up to 15 digits are represented exactly by a double
+	private static final int MAX_SAFE_DOUBLE_DIGITS = 15;
+
+	private NumberParser()
+	{
+	}
+
+	/**
+	 * Parses a value as int. This will throw a NullPointerException if the value is {@code null} and a NumberFormatException if it cannot be interpreted as number.
+	 *
+	 * @param value value to be parsed
+	 * @return value as int
+	 */
+	public static int parseInt(String value)
+	{
+		return toInt(parseLongValue(value));
+	}
+
+	/**
+	 * Parses a value as int.
+	 *
+	 * @param value        value to be parsed
+	 * @param defaultValue value to be returned if the value is {@code null} or cannot be interpreted as number
+	 * @return value as int or the default value
+	 */
+	public static int parseInt(String value, int defaultValue)
+	{
+		if(value == null)
+			return defaultValue;
+
+		try
+		{
+			return parseInt(value);
+		}
+		catch(NumberFormatException e)
+		{
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Parses characters from a character array as int. This will throw a NumberFormatException if the characters cannot be interpreted as number.
+	 *
+	 * @param ch     characters
+	 * @param start  start position in the character array
+	 * @param length number of characters to read from the character array
+	 * @return value as int
+	 */
+	public static int parseInt(char[] ch, int start, int length)
+	{
+		return toInt(parseLongValue(ch, start, start + length));
+	}
+
+	/**
+	 * Parses characters from a character array as int.
+	 *
+	 * @param ch           characters
+	 * @param start        start position in the character array
+	 * @param length       number of characters to read from the character array
+	 * @param defaultValue value to be returned if the characters cannot be interpreted as number
+	 * @return value as int or the default value
+	 */
+	public static int parseInt(char[] ch, int start, int length, int defaultValue)
+	{
+		try
+		{
+			return parseInt(ch, start, length);
+		}
+		catch(NumberFormatException e)
+		{
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Parses a value as long. This will throw a NullPointerException if the value is {@code null} and a NumberFormatException if it cannot be interpreted as number.
+	 *
+	 * @param value value to be parsed
+	 * @return value as long
+	 */
+	public static long parseLong(String value)
+	{
+		return parseLongValue(value);
+	}
+
+	/**
+	 * Parses a value as long.
+	 *
+	 * @param value        value to be parsed
+	 * @param defaultValue value to be returned if the value is {@code null} or cannot be interpreted as number
+	 * @return value as long or the default value
+	 */
+	public static long parseLong(String value, long defaultValue)
+	{
+		if(value == null)
+			return defaultValue;
+
+		try
+		{
+			return parseLongValue(value);
+		}
+		catch(NumberFormatException e)
+		{
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Parses characters from a character array as long. This will throw a NumberFormatException if the characters cannot be interpreted as number.
+	 *
+	 * @param ch     characters
+	 * @param start  start position in the character array
+	 * @param length number of characters to read from the character array
+	 * @return value as long
+	 */
+	public static long parseLong(char[] ch, int start, int length)
+	{
+		return parseLongValue(ch, start, start + length);
+	}
+
+	/**
+	 * Parses characters from a character array as long.
+	 *
+	 * @param ch           characters
+	 * @param start        start position in the character array
+	 * @param length       number of characters to read from the character array
+	 * @param defaultValue value to be returned if the characters cannot be interpreted as number
+	 * @return value as long or the default value
+	 */
+	public static long parseLong(char[] ch, int start, int length, long defaultValue)
+	{
+		try
+		{
+			return parseLong(ch, start, length);
+		}
+		catch(NumberFormatException e)
+		{
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Parses a value as double. This will throw a NullPointerException if the value is {@code null} and a NumberFormatException if it cannot be interpreted as number.
+	 *
+	 * @param value value to be parsed
+	 * @return value as double
+	 */
+	public static double parseDouble(String value)
+	{
+		return parseDoubleValue(value);
+	}
+
+	/**
+	 * Parses a value as double.
+	 *
+	 * @param value        value to be parsed
+	 * @param defaultValue value to be returned if the value is {@code null} or cannot be interpreted as number
+	 * @return value as double or the default value
+	 */
+	public static double parseDouble(String value, double defaultValue)
+	{
+		if(value == null)
+			return defaultValue;
+
+		try
+		{
+			return parseDoubleValue(value);
+		}
+		catch(NumberFormatException e)
+		{
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Parses characters from a character array as double. This will throw a NumberFormatException if the characters cannot be interpreted as number.
+	 *
+	 * @param ch     characters
+	 * @param start  start position in the character array
+	 * @param length number of characters to read from the character array
+	 * @return value as double
+	 */
+	public static double parseDouble(char[] ch, int start, int length)
+	{
+		return parseDoubleValue(ch, start, start + length);
+	}
+
+	/**
+	 * Parses characters from a character array as double.
+	 *
+	 * @param ch           characters
+	 * @param start        start position in the character array
+	 * @param length       number of characters to read from the character array
+	 * @param defaultValue value to be returned if the characters cannot be interpreted as number
+	 * @return value as double or the default value
+	 */
+	public static double parseDouble(char[] ch, int start, int length, double defaultValue)
+	{
+		try
+		{
+			return parseDouble(ch, start, length);
+		}
+		catch(NumberFormatException e)
+		{
+			return defaultValue;
+		}
+	}
+
+	private static long parseLongValue(String value)
+	{
+		int start = trimStart(value);
+		int end = trimEnd(value, start);
+		int digits = countIntegerDigits(value, start, end);
+		if(digits > 0 && digits <= MAX_SAFE_LONG_DIGITS)
+			return parseInteger(value, start, end);
+		return parseLongFallback(value, digits);
+	}
+
+	private static long parseLongValue(char[] ch, int start, int end)
+	{
+		checkRange(ch, start, end);
+		start = trimStart(ch, start, end);
+		end = trimEnd(ch, start, end);
+		int digits = countIntegerDigits(ch, start, end);
+		if(digits > 0 && digits <= MAX_SAFE_LONG_DIGITS)
+			return parseInteger(ch, start, end);
+		return parseLongFallback(new String(ch, start, end - start), digits);
+	}
+
+	/**
+	 * Parses a value which is not an integer with up to 18 digits.
+	 *
+	 * @param value  value to be parsed
+	 * @param digits number of digits if the value is an integer, 0 otherwise
+	 * @return value as long
+	 */
+	private static long parseLongFallback(String value, int digits)
+	{
+		if(digits > 0)
+		{
+			try
+			{
+				return Long.parseLong(value.trim());
+			}
+			catch(NumberFormatException e)
+			{
+				// out of range: clamp like a double
+			}
+		}
+		return (long)Double.parseDouble(value);
+	}
+
+	private static double parseDoubleValue(String value)
+	{
+		int start = trimStart(value);
+		int end = trimEnd(value, start);
+		int digits = countIntegerDigits(value, start, end);
+		if(digits > 0 && digits <= MAX_SAFE_DOUBLE_DIGITS)
+			return toDouble(parseInteger(value, start, end), value.charAt(start) == '-');
+		return Double.parseDouble(value);
+	}
+
+	private static double parseDoubleValue(char[] ch, int start, int end)
+	{
+		checkRange(ch, start, end);
+		start = trimStart(ch, start, end);
+		end = trimEnd(ch, start, end);
+		int digits = countIntegerDigits(ch, start, end);
+		if(digits > 0 && digits <= MAX_SAFE_DOUBLE_DIGITS)
+			return toDouble(parseInteger(ch, start, end), ch[start] == '-');
+		return Double.parseDouble(new String(ch, start, end - start));
+	}
+
+	/**
+	 * Converts a parsed integer to double.
+	 *
+	 * @param value    parsed integer
+	 * @param negative whether the integer has a minus sign
+	 * @return value as double
+	 */
+	private static double toDouble(long value, boolean negative)
+	{
+		// keep the sign of negative zero
+		if(value == 0 && negative)
+			return -0.0;
+		return value;
+	}
+
+	private static void checkRange(char[] ch, int start, int end)
+	{
+		if(start < 0 || end < start || end > ch.length)
+			throw new IndexOutOfBoundsException("Start: " + start + ", End: " + end + ", Length: " + ch.length);
+	}
+
+	/**
+	 * Clamps a long value to the range of int.
+	 *
+	 * @param value long value
+	 * @return int value
+	 */
+	private static int toInt(long value)
+	{
+		if(value > Integer.MAX_VALUE)
+			return Integer.MAX_VALUE;
+		if(value < Integer.MIN_VALUE)
+			return Integer.MIN_VALUE;
+		return (int)value;
+	}
+
+	/**
+	 * Counts the digits of an integer consisting of an optional sign and digits only.
+	 *
+	 * @param value value to be checked
+	 * @param start start position of the integer
+	 * @param end   end position of the integer
+	 * @return number of digits or 0 if the value is not such an integer
+	 */
+	private static int countIntegerDigits(String value, int start, int end)
+	{
+		if(start < end && (value.charAt(start) == '-' || value.charAt(start) == '+'))
+			start++;
+
+		for(int i = start; i < end; i++)
+		{
+			char c = value.charAt(i);
+			if(c < '0' || c > '9')
+				return 0;
+		}
+		return end - start;
+	}
+
+	private static long parseInteger(String value, int start, int end)
+	{
+		boolean negative = value.charAt(start) == '-';
+		if(negative || value.charAt(start) == '+')
+			start++;
+
+		long result = 0;
+		for(int i = start; i < end; i++)
+			result = result * 10 + (value.charAt(i) - '0');
+
+		return negative ? -result : result;
+	}
+
+	/**
+	 * Counts the digits of an integer consisting of an optional sign and digits only.
+	 *
+	 * @param ch    characters
+	 * @param start start position of the integer
+	 * @param end   end position of the integer
+	 * @return number of digits or 0 if the characters are not such an integer
+	 */
+	private static int countIntegerDigits(char[] ch, int start, int end)
+	{
+		if(start < end && (ch[start] == '-' || ch[start] == '+'))
+			start++;
+
+		for(int i = start; i < end; i++)
+		{
+			if(ch[i] < '0' || ch[i] > '9')
+				return 0;
+		}
+		return end - start;
+	}
+
+	private static long parseInteger(char[] ch, int start, int end)
+	{
+		boolean negative = ch[start] == '-';
+		if(negative || ch[start] == '+')
+			start++;
+
+		long result = 0;
+		for(int i = start; i < end; i++)
+			result = result * 10 + (ch[i] - '0');
+
+		return negative ? -result : result;
+	}
+
+	private static int trimStart(char[] ch, int start, int end)
+	{
+		while(start < end && ch[start] <= ' ')
+			start++;
+		return start;
+	}
+
+	private static int trimEnd(char[] ch, int start, int end)
+	{
+		while(end > start && ch[end - 1] <= ' ')
+			end--;
+		return end;
+	}
+
+	private static int trimStart(String value)
+	{
+		int start = 0;
+		while(start < value.length() && value.charAt(start) <= ' ')
+			start++;
+		return start;
+	}
+
+	private static int trimEnd(String value, int start)
+	{
+		int end = value.length();
+		while(end > start && value.charAt(end - 1) <= ' ')
+			end--;
+		return end;
+	}
+}
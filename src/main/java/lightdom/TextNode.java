@@ -12,7 +12,16 @@ import java.io.Writer;
 public class TextNode implements Node
 {
 	private Element parent;
+	private Node previousSibling = null;
+	private Node nextSibling = null;
+	private int childIndex = -1;
 	private String text;
+	private StringBuilder textBuffer = null;
+
+	// generated w3c node, which is kept in sync with this text node until a node for another owner document is requested
+	private org.w3c.dom.Node w3cNode = null;
+	// true if text has been appended since the generated w3c node has been updated
+	private boolean w3cNodeStale = false;
 
 	/**
 	 * Creates a new text node.
@@ -35,7 +44,7 @@ public class TextNode implements Node
 	}
 
 	/**
-	 * Creates text node based on an instance of org.w3c.dom.Node. This will throw a RuntimeException if the given node is not an instance of org.w3c.dom.Text.
+	 * Creates text node based on an instance of org.w3c.dom.Node. This will throw a RuntimeException if the given node is not an instance of org.w3c.dom.Text, which includes CDATA sections.
 	 *
 	 * @param  w3cNode org.w3c.dom.Node to be used to create new text node
 	 * @return text node based on given org.dom.w3c.Node instance
@@ -43,7 +52,7 @@ public class TextNode implements Node
 	 */
 	public static TextNode fromW3CNode(org.w3c.dom.Node w3cNode)
 	{
-		if(w3cNode.getNodeType() != org.w3c.dom.Node.TEXT_NODE)
+		if(w3cNode.getNodeType() != org.w3c.dom.Node.TEXT_NODE && w3cNode.getNodeType() != org.w3c.dom.Node.CDATA_SECTION_NODE)
 			throw new RuntimeException("Node must be a  text node.");
 
 		return new TextNode(w3cNode.getNodeValue());
@@ -57,7 +66,44 @@ public class TextNode implements Node
 	 */
 	public org.w3c.dom.Node toW3CNode(org.w3c.dom.Document document)
 	{
-		return document.createTextNode(text);
+		org.w3c.dom.Node node = w3cNode;
+		if(node == null || node.getOwnerDocument() != document)
+		{
+			node = document.createTextNode(getText());
+			w3cNode = node;
+			w3cNodeStale = false;
+
+			// a parent synchronized with another owner document cannot be kept in sync any more
+			if(parent != null)
+				parent.removeW3CNodes(document);
+		}
+		else
+		{
+			updateW3CText();
+		}
+		return node;
+	}
+
+	/**
+	 * Applies appended text to the generated w3c node.
+	 */
+	void updateW3CText()
+	{
+		if(w3cNodeStale)
+		{
+			w3cNode.setNodeValue(getText());
+			w3cNodeStale = false;
+		}
+	}
+
+	/**
+	 * Returns the generated w3c node of this text node.
+	 *
+	 * @return generated w3c node or {@code null} if there is none
+	 */
+	org.w3c.dom.Node getW3CNode()
+	{
+		return w3cNode;
 	}
 
 	/**
@@ -66,9 +112,78 @@ public class TextNode implements Node
 	 * Sets the parent of this element. For any Element instance {@code element} and Node instance {@code node}, {@code node.setParent(element)} has the same effect as {@code element.appendChild(node)}.
 	 */
 	public void setParent(Element parent)
+	{
+		if(parent != null)
+			parent.appendChild(this);
+		else if(this.parent != null)
+			this.parent.removeChild(this);
+	}
+
+	/**
+	 * Updates the reference to the parent of this text node and its siblings. This method is invoked by the parent when this text node is inserted or removed.
+	 *
+	 * @param parent          new parent of this text node or {@code null} if it has been removed
+	 * @param previousSibling new previous sibling
+	 * @param nextSibling     new next sibling
+	 */
+	void link(Element parent, Node previousSibling, Node nextSibling)
 	{
 		this.parent = parent;
-		parent.appendChild(this, false);
+		this.previousSibling = previousSibling;
+		this.nextSibling = nextSibling;
+	}
+
+	void setPreviousSibling(Node previousSibling)
+	{
+		this.previousSibling = previousSibling;
+	}
+
+	void setNextSibling(Node nextSibling)
+	{
+		this.nextSibling = nextSibling;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @since 1.1.5
+	 */
+	public Node getPreviousSibling()
+	{
+		return previousSibling;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @since 1.1.5
+	 */
+	public Node getNextSibling()
+	{
+		return nextSibling;
+	}
+
+	/**
+	 * Sets the position of this text node in the parent's children list. This method is invoked by the parent when it updates the positions of its children.
+	 *
+	 * @param childIndex position of this text node
+	 */
+	void setChildIndex(int childIndex)
+	{
+		this.childIndex = childIndex;
+	}
+
+	/**
+	 * Returns the position of this text node in the parent's children list. The positions are updated by the parent when they are needed after children have been inserted or removed.
+	 *
+	 * @return position of this text node or -1 if it has no parent
+	 */
+	int getChildIndex()
+	{
+		if(parent == null)
+			return -1;
+		parent.updateChildIndexes();
+		return childIndex;
 	}
 
 	/**
@@ -89,10 +204,12 @@ public class TextNode implements Node
 	public void setText(String text)
 	{
 		this.text = text;
+		this.textBuffer = null;
+		textChanged(false);
 	}
 
 	/**
-	 * Appends text to existing text.
+	 * Appends text to existing text. Appended text is collected in a buffer, so appending many pieces of text takes linear time.
 	 *
 	 * @param text text to be appended
 	 */
@@ -100,46 +217,106 @@ public class TextNode implements Node
 	{
 		if(text != null)
 		{
-			if(this.text == null)
-				this.text = "";
-			this.text = this.text + text;
+			if(this.text == null && textBuffer == null)
+				this.text = text;
+			else
+				getTextBuffer(text.length()).append(text);
+			textChanged(true);
 		}
 	}
 
 	/**
-	 * Returns text of this text node.
+	 * Appends characters to existing text without creating an intermediate string. Appended text is collected in a buffer, so appending many pieces of text takes linear time.
+	 *
+	 * @param ch     characters to be appended
+	 * @param start  start position in the character array
+	 * @param length number of characters to append
+	 * @since 1.1.5
+	 */
+	public void appendText(char[] ch, int start, int length)
+	{
+		getTextBuffer(length).append(ch, start, length);
+		textChanged(true);
+	}
+
+	/**
+	 * Returns text of this text node. Text appended since the last invocation is joined into a single string.
 	 *
 	 * @return text of this text node
 	 */
 	public String getText()
 	{
+		if(textBuffer != null)
+		{
+			text = textBuffer.toString();
+			textBuffer = null;
+		}
 		return text;
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Notifies the parent that the text of this text node has been changed. Text which has been set is applied to the generated w3c node directly. Appended text is applied when the node is converted again, as updating the generated node would copy the whole text on every append.
 	 *
-	 * Writes this element and all its children in XML notation.
+	 * @param appended {@code true} if text has been appended
 	 */
-	public void write(Writer writer, int indent, boolean newLine) throws IOException
+	private void textChanged(boolean appended)
 	{
-		if(text != null && text.length() > 0)
+		if(w3cNode != null)
 		{
-			String indentionString = "";
-			for(int i = 0; i < indent; i++)
-				indentionString += "\t";
-
-			if(newLine)
+			if(appended)
 			{
-				writer.write("\n");
-				writer.write(indentionString);
+				w3cNodeStale = true;
+				if(parent != null)
+					parent.w3cTextChanged();
 			}
+			else
+			{
+				w3cNode.setNodeValue(getText());
+				w3cNodeStale = false;
+			}
+		}
+		if(parent != null)
+			parent.childrenChanged();
+	}
 
-			String printText = Document.encodeValueForWriting(text);
-			printText = printText.replaceAll("\n", "\n" + indentionString + "\t");
-			printText = printText.replaceAll("\n" + indentionString + "\t$", "\n" + indentionString);
-			writer.write(printText);
+	/**
+	 * Returns the buffer collecting appended text, containing the current text.
+	 *
+	 * @param additionalLength number of characters about to be appended
+	 * @return text buffer
+	 */
+	private StringBuilder getTextBuffer(int additionalLength)
+	{
+		if(textBuffer == null)
+		{
+			int length = text == null ? 0 : text.length();
+			textBuffer = new StringBuilder(Math.max(16, length + additionalLength));
+			if(text != null)
+				textBuffer.append(text);
 		}
+		return textBuffer;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @since 1.1.5
+	 */
+	public boolean accept(NodeVisitor visitor)
+	{
+		return TreeWalker.walk(this, visitor);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Writes this element and all its children in XML notation.
+	 */
+	public void write(Writer writer, int indent, boolean newLine) throws IOException
+	{
+		XMLSerializer serializer = new XMLSerializer(writer);
+		serializer.writeText(getText(), indent, newLine);
+		serializer.flushBuffer();
 	}
 
 	/** {@inheritDoc} */
@@ -153,9 +330,18 @@ public class TextNode implements Node
 		TextNode textNode = (TextNode)o;
 
 		// compare text
+		String text = getText();
 		if((text == null && textNode.getText() != null) || (text != null && !text.equals(textNode.getText())))
 			return false;
 
 		return true;
 	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int hashCode()
+	{
+		String text = getText();
+		return text == null ? 0 : text.hashCode();
+	}
 }
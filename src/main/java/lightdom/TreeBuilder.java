@@ -0,0 +1,212 @@
+package lightdom;
+
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * Builds a tree of elements and text nodes from parser events. This is used by {@link Document} to build a document from SAX events, by {@link ElementReader} to build the subtrees it returns and by {@link Element#fromW3CNode(org.w3c.dom.Node)} to import W3C nodes.
+ * <p>
+ * The tree is not visible to other code until it is complete, so nodes are appended without invalidating the caches of their parents.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+final class TreeBuilder
+{
+	private final Stack<Element> openElements = new Stack<>();
+	private final WhitespacePolicy whitespacePolicy;
+	private final NameTable nameTable;
+	private Element rootElement = null;
+	private TextNode openTextNode = null;
+	private boolean openTextNodeIsWhitespace = true;
+
+	/**
+	 * Creates a new tree builder.
+	 *
+	 * @param whitespacePolicy policy for character data consisting of whitespace
+	 * @param nameTable        name table used to canonicalize element and attribute names
+	 */
+	TreeBuilder(WhitespacePolicy whitespacePolicy, NameTable nameTable)
+	{
+		this.whitespacePolicy = whitespacePolicy;
+		this.nameTable = nameTable;
+	}
+
+	/**
+	 * Opens a new element. The element is appended to the currently open element or becomes the root element if there is no open element. The name of the element is canonicalized by the name table of this builder, the names of the attributes are expected to be canonicalized by the caller.
+	 *
+	 * @param name       name of the element
+	 * @param id         id of the element or {@code null} if it has no id
+	 * @param attributes attributes of the element
+	 */
+	void startElement(String name, String id, Map<String, String> attributes)
+	{
+		appendOpenTextNode();
+
+		Element element = new Element(nameTable.intern(name), id, attributes);
+		if(!openElements.empty())
+			openElements.peek().appendNewChild(element);
+
+		openElements.push(element);
+		if(rootElement == null)
+		{
+			rootElement = element;
+		}
+	}
+
+	/**
+	 * Closes the currently open element.
+	 *
+	 * @return the closed element
+	 */
+	Element endElement()
+	{
+		appendOpenTextNode();
+		return openElements.pop();
+	}
+
+	/**
+	 * Adds character data to the currently open element. Whitespace is handled according to the whitespace policy of this builder.
+	 *
+	 * @param ch     characters
+	 * @param start  start position in the character array
+	 * @param length number of characters to read from the character array
+	 */
+	void characters(char[] ch, int start, int length)
+	{
+		switch(whitespacePolicy)
+		{
+			case PRESERVE:
+				appendText(ch, start, length);
+				break;
+			case STRIP_TABS:
+				stripTabs(ch, start, length);
+				break;
+			case IGNORE_WHITESPACE_ONLY:
+				if(openTextNodeIsWhitespace && !isWhitespace(ch, start, length))
+					openTextNodeIsWhitespace = false;
+				appendText(ch, start, length);
+				break;
+		}
+	}
+
+	/**
+	 * Adds character data to the currently open element. Whitespace is handled according to the whitespace policy of this builder. If whitespace is preserved, the string is kept as it is instead of being copied.
+	 *
+	 * @param text character data
+	 */
+	void characters(String text)
+	{
+		if(whitespacePolicy == WhitespacePolicy.PRESERVE)
+		{
+			if(openTextNode == null)
+				openTextNode = new TextNode();
+			openTextNode.appendText(text);
+		}
+		else
+		{
+			char[] ch = text.toCharArray();
+			characters(ch, 0, ch.length);
+		}
+	}
+
+	/**
+	 * Returns the name table used to canonicalize element and attribute names.
+	 *
+	 * @return name table
+	 */
+	NameTable getNameTable()
+	{
+		return nameTable;
+	}
+
+	/**
+	 * Returns the first element opened by this builder.
+	 *
+	 * @return root element or {@code null} if no element has been opened yet
+	 */
+	Element getRootElement()
+	{
+		return rootElement;
+	}
+
+	/**
+	 * Returns the number of currently open elements.
+	 *
+	 * @return number of open elements
+	 */
+	int getDepth()
+	{
+		return openElements.size();
+	}
+
+	/**
+	 * Discards the tree built so far, so that the next element opened becomes the new root element.
+	 */
+	void reset()
+	{
+		openElements.clear();
+		rootElement = null;
+		openTextNode = null;
+		openTextNodeIsWhitespace = true;
+	}
+
+	/**
+	 * Removes tabs from the character data and appends it to the open text node unless it consists of whitespace only.
+	 *
+	 * @param ch     characters
+	 * @param start  start position in the character array
+	 * @param length number of characters to read from the character array
+	 */
+	private void stripTabs(char[] ch, int start, int length)
+	{
+		if(isWhitespace(ch, start, length))
+			return;
+
+		// append the runs of characters between tabs
+		int end = start + length;
+		int runStart = start;
+		for(int i = start; i < end; i++)
+		{
+			if(ch[i] == '\t')
+			{
+				if(i > runStart)
+					appendText(ch, runStart, i - runStart);
+				runStart = i + 1;
+			}
+		}
+		if(end > runStart)
+			appendText(ch, runStart, end - runStart);
+	}
+
+	private void appendText(char[] ch, int start, int length)
+	{
+		if(openTextNode == null)
+			openTextNode = new TextNode();
+		openTextNode.appendText(ch, start, length);
+	}
+
+	private static boolean isWhitespace(char[] ch, int start, int length)
+	{
+		for(int i = start; i < start + length; i++)
+		{
+			if(ch[i] > ' ')
+				return false;
+		}
+		return true;
+	}
+
+	private void appendOpenTextNode()
+	{
+		if(openTextNode != null && !(whitespacePolicy == WhitespacePolicy.IGNORE_WHITESPACE_ONLY && openTextNodeIsWhitespace))
+		{
+			// join the collected text, so the finished tree can be read by multiple threads
+			openTextNode.getText();
+			openElements.peek().appendNewChild(openTextNode);
+		}
+
+		openTextNode = null;
+		openTextNodeIsWhitespace = true;
+	}
+}
@@ -0,0 +1,156 @@
+package lightdom;
+
+/**
+ * Walks through a subtree in document order without recursion, so that trees of any depth can be processed with constant stack space. The walker follows the sibling and parent links of the nodes and does not allocate any memory while walking.
+ * <p>
+ * Each call of {@link #next()} moves to the next event. Every element produces two events, one when it is entered before its children and one when it is left after its children. Text nodes only produce one event. For example, walking {@code <a><b/>text</a>} produces the events enter {@code a}, enter {@code b}, leave {@code b}, text, leave {@code a}.
+ * <p>
+ * The subtree must not be modified while it is walked, except for changes to the current node which do not affect its position, such as changing attributes or text.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+public final class TreeWalker
+{
+	private final Node root;
+	private Node currentNode = null;
+	private boolean leaving = false;
+	private boolean skipChildren = false;
+	private int depth = 0;
+
+	/**
+	 * Creates a walker for a subtree. The first call of {@link #next()} moves to the root of the subtree.
+	 *
+	 * @param root root of the subtree
+	 */
+	public TreeWalker(Node root)
+	{
+		if(root == null)
+			throw new IllegalArgumentException("Root must not be null.");
+		this.root = root;
+	}
+
+	/**
+	 * Walks a subtree and passes its nodes to a visitor. This implements {@link Node#accept(NodeVisitor)}.
+	 *
+	 * @param root    root of the subtree
+	 * @param visitor visitor receiving the nodes
+	 * @return {@code true} if the whole subtree has been visited, {@code false} if the visitor has stopped the walk
+	 */
+	static boolean walk(Node root, NodeVisitor visitor)
+	{
+		TreeWalker walker = new TreeWalker(root);
+		while(walker.next())
+		{
+			Node node = walker.getCurrentNode();
+			VisitResult result;
+			if(node instanceof TextNode)
+				result = visitor.visitText((TextNode)node);
+			else if(walker.isLeaving())
+				result = visitor.leaveElement((Element)node);
+			else
+				result = visitor.enterElement((Element)node);
+
+			if(result == VisitResult.STOP)
+				return false;
+			if(result == VisitResult.SKIP_CHILDREN)
+				walker.skipChildren();
+		}
+		return true;
+	}
+
+	/**
+	 * Moves to the next event.
+	 *
+	 * @return {@code true} if the walker has moved to the next event, {@code false} if the whole subtree has been walked
+	 */
+	public boolean next()
+	{
+		Node node = currentNode;
+		if(node == null)
+		{
+			if(leaving)
+				return false;
+			currentNode = root;
+			return true;
+		}
+
+		// descend into the children of an element which has just been entered
+		if(!leaving && node instanceof Element)
+		{
+			Node firstChild = skipChildren ? null : ((Element)node).getFirstChild();
+			skipChildren = false;
+			if(firstChild != null)
+			{
+				currentNode = firstChild;
+				depth++;
+			}
+			else
+			{
+				leaving = true;
+			}
+			return true;
+		}
+
+		if(node == root)
+		{
+			currentNode = null;
+			leaving = true;
+			return false;
+		}
+
+		Node nextSibling = node.getNextSibling();
+		if(nextSibling != null)
+		{
+			currentNode = nextSibling;
+			leaving = false;
+		}
+		else
+		{
+			currentNode = node.getParent();
+			leaving = true;
+			depth--;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the node of the current event.
+	 *
+	 * @return current node or {@code null} if the walker has not been moved yet or the whole subtree has been walked
+	 */
+	public Node getCurrentNode()
+	{
+		return currentNode;
+	}
+
+	/**
+	 * Indicates whether the current event is leaving an element, after all its children have been walked.
+	 *
+	 * @return {@code true} if the current element is left, {@code false} if the current node is entered or is a text node
+	 */
+	public boolean isLeaving()
+	{
+		return leaving && currentNode != null;
+	}
+
+	/**
+	 * Returns the depth of the current node relative to the root of the subtree, which has depth 0.
+	 *
+	 * @return depth of the current node
+	 */
+	public int getDepth()
+	{
+		return depth;
+	}
+
+	/**
+	 * Skips the children of the current element, so that the next event is leaving it. This has no effect if the current event is not entering an element.
+	 */
+	public void skipChildren()
+	{
+		if(!leaving && currentNode instanceof Element)
+			skipChildren = true;
+	}
+}
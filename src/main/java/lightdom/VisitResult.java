@@ -0,0 +1,26 @@
+package lightdom;
+
+/**
+ * Tells a {@link TreeWalker} walking a subtree for a {@link NodeVisitor} how to continue after a node has been visited.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+public enum VisitResult
+{
+	/**
+	 * The walk continues with the next node in document order, which is the first child if an element has been entered.
+	 */
+	CONTINUE,
+
+	/**
+	 * The children of the entered element are skipped and the walk continues with leaving it. After leaving an element or visiting a text node, this is the same as {@link #CONTINUE}.
+	 */
+	SKIP_CHILDREN,
+
+	/**
+	 * The walk ends immediately, no further nodes are visited, and no elements are left.
+	 */
+	STOP
+}
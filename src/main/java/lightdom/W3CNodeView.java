@@ -0,0 +1,1602 @@
+package lightdom;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Comment;
+import org.w3c.dom.DOMConfiguration;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.EntityReference;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.Text;
+import org.w3c.dom.TypeInfo;
+import org.w3c.dom.UserDataHandler;
+
+/**
+ * Read-only view of elements and text nodes as instances of org.w3c.dom.Node. Unlike the nodes generated by {@link Document#toW3CDocument()}, a view does not copy the tree: every view node wraps an element, a text node or an attribute and reads it directly. View nodes of elements and text nodes are created when they are visited and referenced weakly by their {@link DocumentView}, so that visiting a node again returns the same instance as long as it is referenced by the consumer, while view nodes which are no longer referenced are released. Attribute nodes are created on every access and are identified by their owner element and name.
+ * <p>
+ * All methods that would modify the tree throw a {@link DOMException} with code {@link DOMException#NO_MODIFICATION_ALLOWED_ERR}. The tree itself must not be modified while a view of it is in use. Like other DOM implementations, a view must not be used by multiple threads concurrently.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+abstract class W3CNodeView implements org.w3c.dom.Node
+{
+	private static final NodeList EMPTY_NODE_LIST = new NodeListView(null, Collections.<Node>emptyList());
+
+	private static final TypeInfo EMPTY_TYPE_INFO = new TypeInfo()
+	{
+		@Override
+		public String getTypeName()
+		{
+			return null;
+		}
+
+		@Override
+		public String getTypeNamespace()
+		{
+			return null;
+		}
+
+		@Override
+		public boolean isDerivedFrom(String typeNamespaceArg, String typeNameArg, int derivationMethod)
+		{
+			return false;
+		}
+	};
+
+	private final DocumentView owner;
+
+	/**
+	 * Creates a new view node.
+	 *
+	 * @param owner document view this node belongs to or {@code null} if this node is the document view
+	 */
+	W3CNodeView(DocumentView owner)
+	{
+		this.owner = owner;
+	}
+
+	/**
+	 * Returns the document view this node belongs to.
+	 *
+	 * @return document view
+	 */
+	DocumentView getDocumentView()
+	{
+		return owner == null ? (DocumentView)this : owner;
+	}
+
+	/**
+	 * Returns the view of a node of the tree.
+	 *
+	 * @param node element or text node
+	 * @return view of the node or {@code null} if the node is {@code null}
+	 */
+	org.w3c.dom.Node view(Node node)
+	{
+		return getDocumentView().view(node);
+	}
+
+	static DOMException readOnly()
+	{
+		return new DOMException(DOMException.NO_MODIFICATION_ALLOWED_ERR, "The view of a LightDOM tree is read-only.");
+	}
+
+	static DOMException notSupported()
+	{
+		return new DOMException(DOMException.NOT_SUPPORTED_ERR, "The operation is not supported by the view of a LightDOM tree.");
+	}
+
+	/**
+	 * Returns the node containing this node, which is the parent node or, for attributes, the owner element.
+	 *
+	 * @return containing node or {@code null} if this node is not contained in another node
+	 */
+	org.w3c.dom.Node getContainer()
+	{
+		return getParentNode();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getNodeValue()
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setNodeValue(String nodeValue)
+	{
+		if(getNodeValue() != null)
+			throw readOnly();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public NodeList getChildNodes()
+	{
+		return EMPTY_NODE_LIST;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public org.w3c.dom.Node getFirstChild()
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public org.w3c.dom.Node getLastChild()
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public org.w3c.dom.Node getPreviousSibling()
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public org.w3c.dom.Node getNextSibling()
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public NamedNodeMap getAttributes()
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public org.w3c.dom.Document getOwnerDocument()
+	{
+		return owner;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public org.w3c.dom.Node insertBefore(org.w3c.dom.Node newChild, org.w3c.dom.Node refChild)
+	{
+		throw readOnly();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public org.w3c.dom.Node replaceChild(org.w3c.dom.Node newChild, org.w3c.dom.Node oldChild)
+	{
+		throw readOnly();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public org.w3c.dom.Node removeChild(org.w3c.dom.Node oldChild)
+	{
+		throw readOnly();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public org.w3c.dom.Node appendChild(org.w3c.dom.Node newChild)
+	{
+		throw readOnly();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean hasChildNodes()
+	{
+		return getFirstChild() != null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public org.w3c.dom.Node cloneNode(boolean deep)
+	{
+		throw notSupported();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Adjacent text nodes are kept as the view cannot be modified.
+	 */
+	@Override
+	public void normalize()
+	{
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isSupported(String feature, String version)
+	{
+		return ("Core".equalsIgnoreCase(feature) || "XML".equalsIgnoreCase(feature)) && (version == null || version.isEmpty() || "1.0".equals(version) || "2.0".equals(version) || "3.0".equals(version));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * LightDOM trees do not keep namespaces, so this is always {@code null}.
+	 */
+	@Override
+	public String getNamespaceURI()
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getPrefix()
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setPrefix(String prefix)
+	{
+		throw readOnly();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getLocalName()
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean hasAttributes()
+	{
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getBaseURI()
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public short compareDocumentPosition(org.w3c.dom.Node other)
+	{
+		if(isSameNode(other))
+			return 0;
+
+		// nodes of different trees are ordered consistently, but arbitrarily
+		short disconnected = (short)(DOCUMENT_POSITION_DISCONNECTED | DOCUMENT_POSITION_IMPLEMENTATION_SPECIFIC | (System.identityHashCode(this) < System.identityHashCode(other) ? DOCUMENT_POSITION_FOLLOWING : DOCUMENT_POSITION_PRECEDING));
+		if(!(other instanceof W3CNodeView) || ((W3CNodeView)other).getDocumentView() != getDocumentView())
+			return disconnected;
+
+		List<W3CNodeView> path = getPath();
+		List<W3CNodeView> otherPath = ((W3CNodeView)other).getPath();
+		int depth = 0;
+		while(depth < path.size() && depth < otherPath.size() && path.get(depth).isSameNode(otherPath.get(depth)))
+			depth++;
+
+		if(depth == 0)
+			return disconnected;
+		if(depth == path.size())
+			return (short)(DOCUMENT_POSITION_CONTAINED_BY | DOCUMENT_POSITION_FOLLOWING);
+		if(depth == otherPath.size())
+			return (short)(DOCUMENT_POSITION_CONTAINS | DOCUMENT_POSITION_PRECEDING);
+
+		// the paths diverge below a common container
+		return path.get(depth).precedes(otherPath.get(depth)) ? DOCUMENT_POSITION_FOLLOWING : DOCUMENT_POSITION_PRECEDING;
+	}
+
+	/**
+	 * Returns the containers of this node from the outermost one down to this node.
+	 *
+	 * @return path to this node
+	 */
+	private List<W3CNodeView> getPath()
+	{
+		List<W3CNodeView> path = new ArrayList<>();
+		for(org.w3c.dom.Node node = this; node != null; node = ((W3CNodeView)node).getContainer())
+			path.add((W3CNodeView)node);
+		Collections.reverse(path);
+		return path;
+	}
+
+	/**
+	 * Indicates whether this node precedes a node with the same container in document order.
+	 *
+	 * @param sibling node with the same container
+	 * @return {@code true} if this node comes first
+	 */
+	boolean precedes(W3CNodeView sibling)
+	{
+		if(sibling instanceof AttrView)
+			return false;
+		return XPathExpr.compareDocumentOrder(((TreeNodeView)this).getNode(), ((TreeNodeView)sibling).getNode()) < 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setTextContent(String textContent)
+	{
+		throw readOnly();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isSameNode(org.w3c.dom.Node other)
+	{
+		return equals(other);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String lookupPrefix(String namespaceURI)
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isDefaultNamespace(String namespaceURI)
+	{
+		return namespaceURI == null || namespaceURI.isEmpty();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String lookupNamespaceURI(String prefix)
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Object getFeature(String feature, String version)
+	{
+		return isSupported(feature, version) ? this : null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Object setUserData(String key, Object data, UserDataHandler handler)
+	{
+		return getDocumentView().setUserData(this, key, data);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Object getUserData(String key)
+	{
+		return getDocumentView().getUserData(this, key);
+	}
+
+	/**
+	 * Read-only view of a document.
+	 */
+	static final class DocumentView extends W3CNodeView implements org.w3c.dom.Document
+	{
+		private final Document document;
+		// views are referenced weakly, the entries of collected views are removed on the next lookup
+		private Map<Node, ViewReference> views = new IdentityHashMap<>();
+		private int maxViewCount = 0;
+		private final ReferenceQueue<W3CNodeView> collectedViews = new ReferenceQueue<>();
+		private Map<W3CNodeView, Map<String, Object>> userData = null;
+		private String documentURI = null;
+		private boolean strictErrorChecking = true;
+
+		/**
+		 * Creates a view of a document.
+		 *
+		 * @param document document to be wrapped
+		 */
+		DocumentView(Document document)
+		{
+			super(null);
+			this.document = document;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		org.w3c.dom.Node view(Node node)
+		{
+			if(node == null)
+				return null;
+
+			removeCollectedViews();
+			ViewReference reference = views.get(node);
+			W3CNodeView view = reference == null ? null : reference.get();
+			if(view == null)
+			{
+				if(node instanceof Element)
+					view = new ElementView(this, (Element)node);
+				else
+					view = new TextView(this, (TextNode)node);
+				views.put(node, new ViewReference(node, view, collectedViews));
+				maxViewCount = Math.max(maxViewCount, views.size());
+			}
+			return view;
+		}
+
+		/**
+		 * Removes the entries of views which have been collected.
+		 */
+		private void removeCollectedViews()
+		{
+			Reference<? extends W3CNodeView> reference = collectedViews.poll();
+			if(reference == null)
+				return;
+
+			for(; reference != null; reference = collectedViews.poll())
+			{
+				Node node = ((ViewReference)reference).node;
+				if(views.get(node) == reference)
+					views.remove(node);
+			}
+
+			// the table of an identity map does not shrink, so it is copied once most views have been collected
+			if(views.size() < maxViewCount / 4)
+			{
+				views = new IdentityHashMap<>(views);
+				maxViewCount = views.size();
+			}
+		}
+
+		Object setUserData(W3CNodeView node, String key, Object data)
+		{
+			if(userData == null)
+				userData = new HashMap<>();
+			Map<String, Object> nodeUserData = userData.get(node);
+			if(nodeUserData == null)
+			{
+				if(data == null)
+					return null;
+				nodeUserData = new HashMap<>();
+				userData.put(node, nodeUserData);
+			}
+			return data == null ? nodeUserData.remove(key) : nodeUserData.put(key, data);
+		}
+
+		Object getUserData(W3CNodeView node, String key)
+		{
+			if(userData == null || !userData.containsKey(node))
+				return null;
+			return userData.get(node).get(key);
+		}
+
+		/**
+		 * Indicates whether an element belongs to the tree of the root element of the document.
+		 *
+		 * @param element element
+		 * @return {@code true} if the element is the root element or one of its descendants
+		 */
+		boolean contains(Element element)
+		{
+			Element rootElement = document.getRootElement();
+			for(Element ancestor = element; ancestor != null; ancestor = ancestor.getParent())
+			{
+				if(ancestor == rootElement)
+					return true;
+			}
+			return false;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getNodeName()
+		{
+			return "#document";
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public short getNodeType()
+		{
+			return DOCUMENT_NODE;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node getParentNode()
+		{
+			return null;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public NodeList getChildNodes()
+		{
+			Element rootElement = document.getRootElement();
+			return new NodeListView(this, rootElement == null ? Collections.<Node>emptyList() : Collections.<Node>singletonList(rootElement));
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node getFirstChild()
+		{
+			return view(document.getRootElement());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node getLastChild()
+		{
+			return view(document.getRootElement());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getTextContent()
+		{
+			return null;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean isEqualNode(org.w3c.dom.Node other)
+		{
+			if(!(other instanceof DocumentView))
+				return false;
+			Element rootElement = document.getRootElement();
+			Element otherRootElement = ((DocumentView)other).document.getRootElement();
+			return rootElement == null ? otherRootElement == null : rootElement.equals(otherRootElement);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public DocumentType getDoctype()
+		{
+			return null;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public DOMImplementation getImplementation()
+		{
+			try
+			{
+				return DocumentBuilderFactory.newInstance().newDocumentBuilder().getDOMImplementation();
+			}
+			catch(Exception e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Element getDocumentElement()
+		{
+			return (org.w3c.dom.Element)view(document.getRootElement());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Element createElement(String tagName)
+		{
+			throw notSupported();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public DocumentFragment createDocumentFragment()
+		{
+			throw notSupported();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Text createTextNode(String data)
+		{
+			throw notSupported();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Comment createComment(String data)
+		{
+			throw notSupported();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public CDATASection createCDATASection(String data)
+		{
+			throw notSupported();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public ProcessingInstruction createProcessingInstruction(String target, String data)
+		{
+			throw notSupported();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Attr createAttribute(String name)
+		{
+			throw notSupported();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public EntityReference createEntityReference(String name)
+		{
+			throw notSupported();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public NodeList getElementsByTagName(String tagname)
+		{
+			Element rootElement = document.getRootElement();
+			if(rootElement == null)
+				return EMPTY_NODE_LIST;
+			if("*".equals(tagname))
+				return new NodeListView(this, descendants(rootElement, true));
+
+			List<Element> elements = new ArrayList<>();
+			if(rootElement.getName().equals(tagname))
+				elements.add(rootElement);
+			elements.addAll(rootElement.getDescendantsByName(tagname));
+			return new NodeListView(this, elements);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node importNode(org.w3c.dom.Node importedNode, boolean deep)
+		{
+			throw notSupported();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Element createElementNS(String namespaceURI, String qualifiedName)
+		{
+			throw notSupported();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Attr createAttributeNS(String namespaceURI, String qualifiedName)
+		{
+			throw notSupported();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public NodeList getElementsByTagNameNS(String namespaceURI, String localName)
+		{
+			if(namespaceURI == null || namespaceURI.isEmpty() || "*".equals(namespaceURI))
+				return getElementsByTagName(localName);
+			return EMPTY_NODE_LIST;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Element getElementById(String elementId)
+		{
+			Element element = document.getElementById(elementId);
+			if(element == null || !contains(element))
+				return null;
+			return (org.w3c.dom.Element)view(element);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getInputEncoding()
+		{
+			return document.getEncoding().name();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getXmlEncoding()
+		{
+			return document.getEncoding().name();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean getXmlStandalone()
+		{
+			return false;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void setXmlStandalone(boolean xmlStandalone)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getXmlVersion()
+		{
+			return document.getVersion();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void setXmlVersion(String xmlVersion)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean getStrictErrorChecking()
+		{
+			return strictErrorChecking;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void setStrictErrorChecking(boolean strictErrorChecking)
+		{
+			this.strictErrorChecking = strictErrorChecking;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getDocumentURI()
+		{
+			return documentURI;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void setDocumentURI(String documentURI)
+		{
+			this.documentURI = documentURI;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node adoptNode(org.w3c.dom.Node source)
+		{
+			throw notSupported();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public DOMConfiguration getDomConfig()
+		{
+			return null;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void normalizeDocument()
+		{
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node renameNode(org.w3c.dom.Node n, String namespaceURI, String qualifiedName)
+		{
+			throw readOnly();
+		}
+	}
+
+	/**
+	 * View of an element or a text node.
+	 */
+	abstract static class TreeNodeView extends W3CNodeView
+	{
+		TreeNodeView(DocumentView owner)
+		{
+			super(owner);
+		}
+
+		/**
+		 * Returns the wrapped node.
+		 *
+		 * @return element or text node
+		 */
+		abstract Node getNode();
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node getParentNode()
+		{
+			Node node = getNode();
+			if(node instanceof Element && getDocumentView().document.getRootElement() == node)
+				return getDocumentView();
+			return view(node.getParent());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node getPreviousSibling()
+		{
+			Node node = getNode();
+			if(getDocumentView().document.getRootElement() == node)
+				return null;
+			return view(node.getPreviousSibling());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node getNextSibling()
+		{
+			Node node = getNode();
+			if(getDocumentView().document.getRootElement() == node)
+				return null;
+			return view(node.getNextSibling());
+		}
+	}
+
+	/**
+	 * Read-only view of an element.
+	 */
+	static final class ElementView extends TreeNodeView implements org.w3c.dom.Element
+	{
+		private final Element element;
+
+		ElementView(DocumentView owner, Element element)
+		{
+			super(owner);
+			this.element = element;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		Node getNode()
+		{
+			return element;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getNodeName()
+		{
+			return element.getName();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public short getNodeType()
+		{
+			return ELEMENT_NODE;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public NodeList getChildNodes()
+		{
+			return new NodeListView(getDocumentView(), element.getChildren());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node getFirstChild()
+		{
+			return view(element.getFirstChild());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node getLastChild()
+		{
+			return view(element.getLastChild());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean hasChildNodes()
+		{
+			return element.getFirstChild() != null;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public NamedNodeMap getAttributes()
+		{
+			return new AttributeMapView(this);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean hasAttributes()
+		{
+			return element.getId() != null || element.getAttributeCount() > 0;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getLocalName()
+		{
+			return element.getName();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getTextContent()
+		{
+			// text of all descendant text nodes in document order
+			StringBuilder textBuilder = new StringBuilder();
+			TreeWalker walker = new TreeWalker(element);
+			while(walker.next())
+			{
+				if(walker.getCurrentNode() instanceof TextNode)
+				{
+					String text = ((TextNode)walker.getCurrentNode()).getText();
+					if(text != null)
+						textBuilder.append(text);
+				}
+			}
+			return textBuilder.toString();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean isEqualNode(org.w3c.dom.Node other)
+		{
+			return other instanceof ElementView && element.equals(((ElementView)other).element);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * The key {@code Element.USER_DATA_KEY} maps to the wrapped element, like for the nodes generated by {@link Element#toW3CNode(org.w3c.dom.Document)}.
+		 */
+		@Override
+		public Object getUserData(String key)
+		{
+			if(Element.USER_DATA_KEY.equals(key))
+				return element;
+			return super.getUserData(key);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getTagName()
+		{
+			return element.getName();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getAttribute(String name)
+		{
+			String value = "id".equals(name) ? element.getId() : element.getAttribute(name);
+			return value == null ? "" : value;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void setAttribute(String name, String value)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void removeAttribute(String name)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Attr getAttributeNode(String name)
+		{
+			return (Attr)getAttributes().getNamedItem(name);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Attr setAttributeNode(Attr newAttr)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Attr removeAttributeNode(Attr oldAttr)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public NodeList getElementsByTagName(String name)
+		{
+			if("*".equals(name))
+				return new NodeListView(getDocumentView(), descendants(element, false));
+			return new NodeListView(getDocumentView(), element.getDescendantsByName(name));
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getAttributeNS(String namespaceURI, String localName)
+		{
+			if(namespaceURI == null || namespaceURI.isEmpty())
+				return getAttribute(localName);
+			return "";
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void setAttributeNS(String namespaceURI, String qualifiedName, String value)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void removeAttributeNS(String namespaceURI, String localName)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Attr getAttributeNodeNS(String namespaceURI, String localName)
+		{
+			return (Attr)getAttributes().getNamedItemNS(namespaceURI, localName);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Attr setAttributeNodeNS(Attr newAttr)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public NodeList getElementsByTagNameNS(String namespaceURI, String localName)
+		{
+			if(namespaceURI == null || namespaceURI.isEmpty() || "*".equals(namespaceURI))
+				return getElementsByTagName(localName);
+			return EMPTY_NODE_LIST;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean hasAttribute(String name)
+		{
+			return "id".equals(name) ? element.getId() != null : element.hasAttributeWithName(name);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean hasAttributeNS(String namespaceURI, String localName)
+		{
+			return (namespaceURI == null || namespaceURI.isEmpty()) && hasAttribute(localName);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public TypeInfo getSchemaTypeInfo()
+		{
+			return EMPTY_TYPE_INFO;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void setIdAttribute(String name, boolean isId)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void setIdAttributeNS(String namespaceURI, String localName, boolean isId)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void setIdAttributeNode(Attr idAttr, boolean isId)
+		{
+			throw readOnly();
+		}
+	}
+
+	/**
+	 * Read-only view of a text node.
+	 */
+	static final class TextView extends TreeNodeView implements Text
+	{
+		private final TextNode textNode;
+
+		TextView(DocumentView owner, TextNode textNode)
+		{
+			super(owner);
+			this.textNode = textNode;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		Node getNode()
+		{
+			return textNode;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getNodeName()
+		{
+			return "#text";
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public short getNodeType()
+		{
+			return TEXT_NODE;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getNodeValue()
+		{
+			return getData();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getTextContent()
+		{
+			return getData();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean isEqualNode(org.w3c.dom.Node other)
+		{
+			return other instanceof TextView && getData().equals(((TextView)other).getData());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getData()
+		{
+			String text = textNode.getText();
+			return text == null ? "" : text;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void setData(String data)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public int getLength()
+		{
+			return getData().length();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String substringData(int offset, int count)
+		{
+			String data = getData();
+			if(offset < 0 || offset > data.length() || count < 0)
+				throw new DOMException(DOMException.INDEX_SIZE_ERR, "Offset " + offset + " or count " + count + " out of range.");
+			return data.substring(offset, Math.min(data.length(), offset + count));
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void appendData(String arg)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void insertData(int offset, String arg)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void deleteData(int offset, int count)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void replaceData(int offset, int count, String arg)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Text splitText(int offset)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean isElementContentWhitespace()
+		{
+			return false;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getWholeText()
+		{
+			Node first = textNode;
+			while(first.getPreviousSibling() instanceof TextNode)
+				first = first.getPreviousSibling();
+
+			StringBuilder textBuilder = new StringBuilder();
+			for(Node node = first; node instanceof TextNode; node = node.getNextSibling())
+			{
+				String text = ((TextNode)node).getText();
+				if(text != null)
+					textBuilder.append(text);
+			}
+			return textBuilder.toString();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Text replaceWholeText(String content)
+		{
+			throw readOnly();
+		}
+	}
+
+	/**
+	 * Read-only view of an attribute. The id of an element is presented as attribute {@code id}.
+	 */
+	static final class AttrView extends W3CNodeView implements Attr
+	{
+		private final ElementView ownerElement;
+		private final String name;
+
+		AttrView(ElementView ownerElement, String name)
+		{
+			super(ownerElement.getDocumentView());
+			this.ownerElement = ownerElement;
+			this.name = name;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		org.w3c.dom.Node getContainer()
+		{
+			return ownerElement;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		boolean precedes(W3CNodeView sibling)
+		{
+			if(!(sibling instanceof AttrView))
+				return true;
+			AttributeMapView attributes = (AttributeMapView)ownerElement.getAttributes();
+			return attributes.indexOf(name) < attributes.indexOf(((AttrView)sibling).name);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getNodeName()
+		{
+			return name;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getNodeValue()
+		{
+			return getValue();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public short getNodeType()
+		{
+			return ATTRIBUTE_NODE;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node getParentNode()
+		{
+			return null;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getLocalName()
+		{
+			return name;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getTextContent()
+		{
+			return getValue();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean isEqualNode(org.w3c.dom.Node other)
+		{
+			return other instanceof AttrView && name.equals(((AttrView)other).name) && getValue().equals(((AttrView)other).getValue());
+		}
+
+		/**
+		 * Indicates whether another attribute node is a view of the same attribute, as attribute nodes are created on every access.
+		 *
+		 * @param other other object
+		 * @return {@code true} if the other object is a view of the same attribute of the same element
+		 */
+		@Override
+		public boolean equals(Object other)
+		{
+			return other instanceof AttrView && ownerElement.isSameNode(((AttrView)other).ownerElement) && name.equals(((AttrView)other).name);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public int hashCode()
+		{
+			return System.identityHashCode(ownerElement.element) * 31 + name.hashCode();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getName()
+		{
+			return name;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean getSpecified()
+		{
+			return true;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String getValue()
+		{
+			return ownerElement.getAttribute(name);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void setValue(String value)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Element getOwnerElement()
+		{
+			return ownerElement;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public TypeInfo getSchemaTypeInfo()
+		{
+			return EMPTY_TYPE_INFO;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean isId()
+		{
+			return "id".equals(name);
+		}
+	}
+
+	/**
+	 * Read-only view of the attributes of an element, starting with the id.
+	 */
+	static final class AttributeMapView implements NamedNodeMap
+	{
+		private final ElementView ownerElement;
+
+		AttributeMapView(ElementView ownerElement)
+		{
+			this.ownerElement = ownerElement;
+		}
+
+		/**
+		 * Returns the position of an attribute.
+		 *
+		 * @param name name of the attribute
+		 * @return position of the attribute or -1 if the element has no such attribute
+		 */
+		int indexOf(String name)
+		{
+			Element element = ownerElement.element;
+			int offset = element.getId() == null ? 0 : 1;
+			if("id".equals(name))
+				return offset - 1;
+			for(int i = 0; i < element.getAttributeCount(); i++)
+			{
+				if(element.getAttributeName(i).equals(name))
+					return offset + i;
+			}
+			return -1;
+		}
+
+		private AttrView getAttr(String name)
+		{
+			return new AttrView(ownerElement, name);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node getNamedItem(String name)
+		{
+			return ownerElement.hasAttribute(name) ? getAttr(name) : null;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node setNamedItem(org.w3c.dom.Node arg)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node removeNamedItem(String name)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node item(int index)
+		{
+			Element element = ownerElement.element;
+			if(element.getId() != null)
+			{
+				if(index == 0)
+					return getAttr("id");
+				index--;
+			}
+			if(index < 0 || index >= element.getAttributeCount())
+				return null;
+			return getAttr(element.getAttributeName(index));
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public int getLength()
+		{
+			Element element = ownerElement.element;
+			return (element.getId() == null ? 0 : 1) + element.getAttributeCount();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node getNamedItemNS(String namespaceURI, String localName)
+		{
+			if(namespaceURI == null || namespaceURI.isEmpty())
+				return getNamedItem(localName);
+			return null;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node setNamedItemNS(org.w3c.dom.Node arg)
+		{
+			throw readOnly();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node removeNamedItemNS(String namespaceURI, String localName)
+		{
+			throw readOnly();
+		}
+	}
+
+	/**
+	 * Weak reference to the view of a node, which keeps the node so that the entry of the view can be removed once the view has been collected.
+	 */
+	private static final class ViewReference extends WeakReference<W3CNodeView>
+	{
+		private final Node node;
+
+		ViewReference(Node node, W3CNodeView view, ReferenceQueue<W3CNodeView> queue)
+		{
+			super(view, queue);
+			this.node = node;
+		}
+	}
+
+	/**
+	 * Read-only view of a list of elements or text nodes.
+	 */
+	static final class NodeListView implements NodeList
+	{
+		private final DocumentView owner;
+		private final List<? extends Node> nodes;
+
+		NodeListView(DocumentView owner, List<? extends Node> nodes)
+		{
+			this.owner = owner;
+			this.nodes = nodes;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public org.w3c.dom.Node item(int index)
+		{
+			if(index < 0 || index >= nodes.size())
+				return null;
+			return owner.view(nodes.get(index));
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public int getLength()
+		{
+			return nodes.size();
+		}
+	}
+
+	/**
+	 * Returns the descendant elements of an element in document order.
+	 *
+	 * @param element     element
+	 * @param includeSelf whether the element itself is included
+	 * @return descendant elements
+	 */
+	private static List<Element> descendants(Element element, boolean includeSelf)
+	{
+		List<Element> elements = new ArrayList<>();
+		TreeWalker walker = new TreeWalker(element);
+		while(walker.next())
+		{
+			Node node = walker.getCurrentNode();
+			if(node instanceof Element && !walker.isLeaving() && (node != element || includeSelf))
+				elements.add((Element)node);
+		}
+		return elements;
+	}
+}
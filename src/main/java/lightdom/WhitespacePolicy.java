@@ -0,0 +1,26 @@
+package lightdom;
+
+/**
+ * Defines how character data consisting of whitespace is handled when a document is parsed. Whitespace is any character less than or equal to {@code ' '}, as removed by {@link String#trim()}.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+public enum WhitespacePolicy
+{
+	/**
+	 * All character data is kept as it is, including whitespace between elements. This is the cheapest policy.
+	 */
+	PRESERVE,
+
+	/**
+	 * Tabs are removed and character data consisting of whitespace only is ignored. The parser may report the text between two tags in multiple chunks, each of which is handled on its own. This is the default policy.
+	 */
+	STRIP_TABS,
+
+	/**
+	 * Text between two tags is ignored if it consists of whitespace only, otherwise it is kept as it is, including tabs.
+	 */
+	IGNORE_WHITESPACE_ONLY
+}
@@ -0,0 +1,409 @@
+package lightdom;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Serializes elements and text nodes in XML notation. Output is collected in an internal buffer and written to the underlying writer in blocks. Indentation is taken from a cached table and values are escaped in a single scan, so no intermediate strings are created.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+final class XMLSerializer
+{
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Writer writer;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position = 0;
+
+	// a line break followed by tabs, the first indent + 1 characters are a line break with indent tabs
+	private char[] indentation = newIndentation(32);
+
+	/**
+	 * Creates a new serializer writing to a writer.
+	 *
+	 * @param writer writer to which the output should be written
+	 */
+	XMLSerializer(Writer writer)
+	{
+		this.writer = writer;
+	}
+
+	/**
+	 * Writes an element and all its children. The output is the same as described in {@link Element#write(java.io.Writer, int, boolean)}.
+	 *
+	 * @param element element to be written
+	 * @param indent  number of indents (tabs)
+	 * @param newLine {@code true} if the element starts on a new line
+	 * @throws IOException if an I/O error occurs
+	 */
+	void writeElement(Element element, int indent, boolean newLine) throws IOException
+	{
+		// the subtree is walked iteratively, so deep trees do not overflow the stack
+		TreeWalker walker = new TreeWalker(element);
+		boolean lastNodeIsTextNode = !newLine;
+		while(walker.next())
+		{
+			Node node = walker.getCurrentNode();
+			int nodeIndent = indent + walker.getDepth();
+			if(node instanceof TextNode)
+			{
+				writeText(((TextNode)node).getText(), nodeIndent - 1, false);
+				lastNodeIsTextNode = true;
+			}
+			else if(!walker.isLeaving())
+			{
+				Element currentElement = (Element)node;
+				if(!lastNodeIsTextNode)
+					writeNewLine(nodeIndent);
+
+				writeStartTag(currentElement.getName());
+				if(currentElement.getId() != null)
+					writeAttribute("id", currentElement.getId());
+
+				for(int i = 0; i < currentElement.getAttributeCount(); i++)
+					writeAttribute(currentElement.getAttributeName(i), currentElement.getAttributeValue(i));
+
+				if(!currentElement.hasChildren())
+					closeEmptyElement();
+				else
+					write('>');
+				lastNodeIsTextNode = false;
+			}
+			else
+			{
+				Element currentElement = (Element)node;
+				if(currentElement.hasChildren())
+				{
+					if(!lastNodeIsTextNode)
+						writeNewLine(nodeIndent);
+					writeEndTag(currentElement.getName());
+				}
+				lastNodeIsTextNode = false;
+			}
+		}
+	}
+
+	/**
+	 * Writes the text of a text node. Line breaks in the text are followed by the indentation of the text node plus one tab, except for a line break at the end of the text, which is followed by the indentation only.
+	 *
+	 * @param text    text to be written, nothing is written if it is {@code null} or empty
+	 * @param indent  number of indents (tabs)
+	 * @param newLine {@code true} if the text starts on a new line
+	 * @throws IOException if an I/O error occurs
+	 */
+	void writeText(String text, int indent, boolean newLine) throws IOException
+	{
+		if(text == null || text.length() == 0)
+			return;
+
+		if(newLine)
+			writeNewLine(indent);
+
+		int length = text.length();
+		int start = 0;
+		for(int i = 0; i < length; i++)
+		{
+			char c = text.charAt(i);
+			if(c > '>')
+				continue;
+
+			if(c == '\n')
+			{
+				write(text, start, i);
+				writeNewLine(indent);
+				if(!isTrailingLineBreak(text, i))
+					write('\t');
+				start = i + 1;
+			}
+			else
+			{
+				String entity = entity(c, false);
+				if(entity != null)
+				{
+					write(text, start, i);
+					write(entity);
+					start = i + 1;
+				}
+			}
+		}
+		write(text, start, length);
+	}
+
+	/**
+	 * Writes the beginning of a start tag. The tag is left open for attributes.
+	 *
+	 * @param name name of the element
+	 * @throws IOException if an I/O error occurs
+	 */
+	void writeStartTag(String name) throws IOException
+	{
+		write('<');
+		write(name);
+	}
+
+	/**
+	 * Writes an attribute into an open start tag.
+	 *
+	 * @param name  name of the attribute
+	 * @param value value of the attribute
+	 * @throws IOException if an I/O error occurs
+	 */
+	void writeAttribute(String name, String value) throws IOException
+	{
+		write(' ');
+		writeEscaped(name, true);
+		write('=');
+		write('"');
+		writeEscaped(value, true);
+		write('"');
+	}
+
+	/**
+	 * Closes an open start tag of an element without children.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	void closeEmptyElement() throws IOException
+	{
+		write('/');
+		write('>');
+	}
+
+	/**
+	 * Writes an end tag.
+	 *
+	 * @param name name of the element
+	 * @throws IOException if an I/O error occurs
+	 */
+	void writeEndTag(String name) throws IOException
+	{
+		write('<');
+		write('/');
+		write(name);
+		write('>');
+	}
+
+	/**
+	 * Writes a line break followed by a number of tabs.
+	 *
+	 * @param indent number of indents (tabs)
+	 * @throws IOException if an I/O error occurs
+	 */
+	void writeNewLine(int indent) throws IOException
+	{
+		if(indent >= indentation.length)
+			indentation = newIndentation(Math.max(indent + 1, indentation.length * 2));
+
+		write(indentation, 0, indent + 1);
+	}
+
+	/**
+	 * Writes a string without escaping.
+	 *
+	 * @param value string to be written
+	 * @throws IOException if an I/O error occurs
+	 */
+	void write(String value) throws IOException
+	{
+		write(value, 0, value.length());
+	}
+
+	/**
+	 * Writes the content of the internal buffer to the underlying writer. The underlying writer itself is not flushed.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	void flushBuffer() throws IOException
+	{
+		if(position > 0)
+		{
+			writer.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	/**
+	 * Writes a string and escapes all characters which must not appear in an attribute value or text content respectively. Characters that do not need to be escaped are copied in blocks.
+	 *
+	 * @param value     string to be written
+	 * @param attribute {@code true} to escape for an attribute value, {@code false} to escape for text content
+	 * @throws IOException if an I/O error occurs
+	 */
+	void writeEscaped(String value, boolean attribute) throws IOException
+	{
+		int length = value.length();
+		int start = 0;
+		for(int i = 0; i < length; i++)
+		{
+			char c = value.charAt(i);
+			if(c > '>')
+				continue;
+
+			String entity = entity(c, attribute);
+			if(entity != null)
+			{
+				write(value, start, i);
+				write(entity);
+				start = i + 1;
+			}
+		}
+		write(value, start, length);
+	}
+
+	/**
+	 * Escapes all characters which must not appear in an attribute value or text content respectively. In attribute values, {@code &}, {@code <}, {@code >}, {@code "} and {@code '} are escaped. In text content, quotes do not need to be escaped.
+	 *
+	 * @param value     value to be escaped
+	 * @param attribute {@code true} to escape for an attribute value, {@code false} to escape for text content
+	 * @return the escaped value or the given instance if no character needs to be escaped
+	 */
+	static String escape(String value, boolean attribute)
+	{
+		int length = value.length();
+		int i = 0;
+		while(i < length && (value.charAt(i) > '>' || entity(value.charAt(i), attribute) == null))
+			i++;
+
+		if(i == length)
+			return value;
+
+		StringBuilder escapedValue = new StringBuilder(length + 16);
+		escapedValue.append(value, 0, i);
+		for(; i < length; i++)
+		{
+			char c = value.charAt(i);
+			String entity = c > '>' ? null : entity(c, attribute);
+			if(entity != null)
+				escapedValue.append(entity);
+			else
+				escapedValue.append(c);
+		}
+		return escapedValue.toString();
+	}
+
+	/**
+	 * Writes a value to a writer and escapes all characters which must not appear in an attribute value or text content respectively, see {@link #escape(String, boolean)}.
+	 *
+	 * @param value     value to be escaped
+	 * @param attribute {@code true} to escape for an attribute value, {@code false} to escape for text content
+	 * @param writer    writer to which the escaped value should be written
+	 * @throws IOException if an I/O error occurs
+	 */
+	static void escape(String value, boolean attribute, Writer writer) throws IOException
+	{
+		int length = value.length();
+		int start = 0;
+		for(int i = 0; i < length; i++)
+		{
+			char c = value.charAt(i);
+			if(c > '>')
+				continue;
+
+			String entity = entity(c, attribute);
+			if(entity != null)
+			{
+				writer.write(value, start, i - start);
+				writer.write(entity);
+				start = i + 1;
+			}
+		}
+		writer.write(value, start, length - start);
+	}
+
+	/**
+	 * Returns the entity replacing a character.
+	 *
+	 * @param c         character to be replaced
+	 * @param attribute {@code true} if the character is part of an attribute value, {@code false} if it is part of text content
+	 * @return entity or {@code null} if the character does not need to be escaped
+	 */
+	private static String entity(char c, boolean attribute)
+	{
+		switch(c)
+		{
+			case '&':
+				return "&amp;";
+			case '<':
+				return "&lt;";
+			case '>':
+				return "&gt;";
+			case '"':
+				return attribute ? "&quot;" : null;
+			case '\'':
+				return attribute ? "&apos;" : null;
+			default:
+				return null;
+		}
+	}
+
+	private void write(String value, int start, int end) throws IOException
+	{
+		while(start < end)
+		{
+			if(position == buffer.length)
+				flushBuffer();
+
+			int count = Math.min(end - start, buffer.length - position);
+			value.getChars(start, start + count, buffer, position);
+			position += count;
+			start += count;
+		}
+	}
+
+	private void write(char c) throws IOException
+	{
+		if(position == buffer.length)
+			flushBuffer();
+
+		buffer[position++] = c;
+	}
+
+	private void write(char[] chars, int offset, int length) throws IOException
+	{
+		if(length > buffer.length - position)
+		{
+			flushBuffer();
+			if(length > buffer.length)
+			{
+				writer.write(chars, offset, length);
+				return;
+			}
+		}
+
+		System.arraycopy(chars, offset, buffer, position, length);
+		position += length;
+	}
+
+	/**
+	 * Indicates whether the line break at the given position ends the text, either as last character or followed by a single line terminator only.
+	 *
+	 * @param text  text containing the line break
+	 * @param index position of the line break
+	 * @return {@code true} if the line break ends the text, {@code false} otherwise
+	 */
+	private static boolean isTrailingLineBreak(String text, int index)
+	{
+		if(index == text.length() - 1)
+			return true;
+
+		if(index == text.length() - 2)
+		{
+			char next = text.charAt(index + 1);
+			return next == '\r' || next == '\u0085' || next == '\u2028' || next == '\u2029';
+		}
+
+		return false;
+	}
+
+	private static char[] newIndentation(int length)
+	{
+		char[] indentation = new char[length];
+		Arrays.fill(indentation, '\t');
+		indentation[0] = '\n';
+		return indentation;
+	}
+}
@@ -0,0 +1,1427 @@
+package lightdom;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Expression of the native XPath engine. Expressions are created by {@link XPathParser} and evaluated directly on elements and text nodes without converting the tree to an instance of org.w3c.dom.Node. Node-sets are represented as lists of {@link Element}, {@link TextNode}, {@link Attribute} and {@link Root} instances in document order. Expressions are immutable and can be evaluated by multiple threads concurrently.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+abstract class XPathExpr
+{
+	static final int TYPE_NODESET = 0;
+	static final int TYPE_STRING = 1;
+	static final int TYPE_NUMBER = 2;
+	static final int TYPE_BOOLEAN = 3;
+
+	static final int AXIS_CHILD = 0;
+	static final int AXIS_DESCENDANT = 1;
+	static final int AXIS_DESCENDANT_OR_SELF = 2;
+	static final int AXIS_SELF = 3;
+	static final int AXIS_PARENT = 4;
+	static final int AXIS_ANCESTOR = 5;
+	static final int AXIS_ANCESTOR_OR_SELF = 6;
+	static final int AXIS_FOLLOWING_SIBLING = 7;
+	static final int AXIS_PRECEDING_SIBLING = 8;
+	static final int AXIS_FOLLOWING = 9;
+	static final int AXIS_PRECEDING = 10;
+	static final int AXIS_ATTRIBUTE = 11;
+
+	static final int TEST_NAME = 0;
+	static final int TEST_ANY_NAME = 1;
+	static final int TEST_NODE = 2;
+	static final int TEST_TEXT = 3;
+	static final int TEST_NONE = 4;
+
+	static final Comparator<Object> DOCUMENT_ORDER = new Comparator<Object>()
+	{
+		@Override
+		public int compare(Object o1, Object o2)
+		{
+			return compareDocumentOrder(o1, o2);
+		}
+	};
+
+	/**
+	 * Evaluates this expression.
+	 *
+	 * @param context evaluation context
+	 * @return a node-set (list of nodes in document order), a String, a Double or a Boolean
+	 */
+	abstract Object evaluate(Context context);
+
+	/**
+	 * Returns the type this expression evaluates to.
+	 *
+	 * @return one of the {@code TYPE_*} constants
+	 */
+	abstract int getType();
+
+	/**
+	 * Indicates whether the result of this expression depends on the context position or size.
+	 *
+	 * @return {@code true} if this expression uses {@code position()} or {@code last()}, {@code false} otherwise
+	 */
+	boolean usesPosition()
+	{
+		return false;
+	}
+
+	/**
+	 * Evaluates this expression with the given element as context node.
+	 *
+	 * @param element context element
+	 * @return list of nodes in document order
+	 */
+	List<Object> evaluateNodeSet(Element element)
+	{
+		Object result = evaluate(new Context(element, 1, 1, new Root(element)));
+		if(!(result instanceof List))
+			throw new RuntimeException("Query does not evaluate to a node-set.");
+		return asNodeSet(result);
+	}
+
+	/**
+	 * Evaluation context consisting of the context node, position and size.
+	 */
+	static final class Context
+	{
+		final Object node;
+		final int position;
+		final int size;
+		final Root root;
+
+		Context(Object node, int position, int size, Root root)
+		{
+			this.node = node;
+			this.position = position;
+			this.size = size;
+			this.root = root;
+		}
+	}
+
+	/**
+	 * Root node of the tree the query is evaluated on. Its only child is the top-most ancestor of the element the query was started on.
+	 */
+	static final class Root
+	{
+		final Element topElement;
+
+		Root(Element element)
+		{
+			while(element.getParent() != null)
+				element = element.getParent();
+			this.topElement = element;
+		}
+	}
+
+	/**
+	 * Attribute node of an element. The id of an element is represented as attribute with the name {@code id}.
+	 */
+	static final class Attribute
+	{
+		final Element owner;
+		final String name;
+		final String value;
+
+		Attribute(Element owner, String name, String value)
+		{
+			this.owner = owner;
+			this.name = name;
+			this.value = value;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(this == o) return true;
+			if(!(o instanceof Attribute)) return false;
+
+			Attribute attribute = (Attribute)o;
+			return owner == attribute.owner && name.equals(attribute.name);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return System.identityHashCode(owner) * 31 + name.hashCode();
+		}
+	}
+
+	/*
+	 * Literals
+	 */
+
+	static final class Literal extends XPathExpr
+	{
+		private final String value;
+
+		Literal(String value)
+		{
+			this.value = value;
+		}
+
+		Object evaluate(Context context)
+		{
+			return value;
+		}
+
+		int getType()
+		{
+			return TYPE_STRING;
+		}
+	}
+
+	static final class NumberLiteral extends XPathExpr
+	{
+		private final Double value;
+
+		NumberLiteral(double value)
+		{
+			this.value = value;
+		}
+
+		Object evaluate(Context context)
+		{
+			return value;
+		}
+
+		int getType()
+		{
+			return TYPE_NUMBER;
+		}
+	}
+
+	/*
+	 * Operators
+	 */
+
+	static final class Or extends XPathExpr
+	{
+		private final XPathExpr left;
+		private final XPathExpr right;
+
+		Or(XPathExpr left, XPathExpr right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		Object evaluate(Context context)
+		{
+			return toBoolean(left.evaluate(context)) || toBoolean(right.evaluate(context));
+		}
+
+		int getType()
+		{
+			return TYPE_BOOLEAN;
+		}
+
+		boolean usesPosition()
+		{
+			return left.usesPosition() || right.usesPosition();
+		}
+	}
+
+	static final class And extends XPathExpr
+	{
+		private final XPathExpr left;
+		private final XPathExpr right;
+
+		And(XPathExpr left, XPathExpr right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		Object evaluate(Context context)
+		{
+			return toBoolean(left.evaluate(context)) && toBoolean(right.evaluate(context));
+		}
+
+		int getType()
+		{
+			return TYPE_BOOLEAN;
+		}
+
+		boolean usesPosition()
+		{
+			return left.usesPosition() || right.usesPosition();
+		}
+	}
+
+	static final class Comparison extends XPathExpr
+	{
+		private final String operator;
+		private final XPathExpr left;
+		private final XPathExpr right;
+
+		Comparison(String operator, XPathExpr left, XPathExpr right)
+		{
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		Object evaluate(Context context)
+		{
+			return compare(operator, left.evaluate(context), right.evaluate(context));
+		}
+
+		int getType()
+		{
+			return TYPE_BOOLEAN;
+		}
+
+		boolean usesPosition()
+		{
+			return left.usesPosition() || right.usesPosition();
+		}
+	}
+
+	static final class Arithmetic extends XPathExpr
+	{
+		private final String operator;
+		private final XPathExpr left;
+		private final XPathExpr right;
+
+		Arithmetic(String operator, XPathExpr left, XPathExpr right)
+		{
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		Object evaluate(Context context)
+		{
+			double leftValue = toNumber(left.evaluate(context));
+			double rightValue = toNumber(right.evaluate(context));
+			switch(operator)
+			{
+				case "+":
+					return leftValue + rightValue;
+				case "-":
+					return leftValue - rightValue;
+				case "*":
+					return leftValue * rightValue;
+				case "div":
+					return leftValue / rightValue;
+				default:
+					return leftValue % rightValue;
+			}
+		}
+
+		int getType()
+		{
+			return TYPE_NUMBER;
+		}
+
+		boolean usesPosition()
+		{
+			return left.usesPosition() || right.usesPosition();
+		}
+	}
+
+	static final class Negation extends XPathExpr
+	{
+		private final XPathExpr operand;
+
+		Negation(XPathExpr operand)
+		{
+			this.operand = operand;
+		}
+
+		Object evaluate(Context context)
+		{
+			return -toNumber(operand.evaluate(context));
+		}
+
+		int getType()
+		{
+			return TYPE_NUMBER;
+		}
+
+		boolean usesPosition()
+		{
+			return operand.usesPosition();
+		}
+	}
+
+	static final class Union extends XPathExpr
+	{
+		private final XPathExpr left;
+		private final XPathExpr right;
+
+		Union(XPathExpr left, XPathExpr right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		Object evaluate(Context context)
+		{
+			Object leftValue = left.evaluate(context);
+			Object rightValue = right.evaluate(context);
+			if(!(leftValue instanceof List) || !(rightValue instanceof List))
+				throw new RuntimeException("Operands of a union must be node-sets.");
+
+			List<Object> result = new ArrayList<>(asNodeSet(leftValue));
+			result.addAll(asNodeSet(rightValue));
+			return sortAndRemoveDuplicates(result);
+		}
+
+		int getType()
+		{
+			return TYPE_NODESET;
+		}
+
+		boolean usesPosition()
+		{
+			return left.usesPosition() || right.usesPosition();
+		}
+	}
+
+	/*
+	 * Paths
+	 */
+
+	/**
+	 * Primary expression (e.g. a function call returning a node-set) filtered by predicates.
+	 */
+	static final class Filter extends XPathExpr
+	{
+		private final XPathExpr primary;
+		private final XPathExpr[] predicates;
+
+		Filter(XPathExpr primary, List<XPathExpr> predicates)
+		{
+			this.primary = primary;
+			this.predicates = predicates.toArray(new XPathExpr[predicates.size()]);
+		}
+
+		Object evaluate(Context context)
+		{
+			Object value = primary.evaluate(context);
+			if(!(value instanceof List))
+				throw new RuntimeException("Predicates can only be applied to node-sets.");
+
+			List<Object> nodes = asNodeSet(value);
+			for(XPathExpr predicate : predicates)
+				nodes = applyPredicate(nodes, predicate, context.root);
+			return nodes;
+		}
+
+		int getType()
+		{
+			return TYPE_NODESET;
+		}
+
+		boolean usesPosition()
+		{
+			return primary.usesPosition();
+		}
+	}
+
+	/**
+	 * Location path, optionally starting at the root node or at the result of a filter expression.
+	 */
+	static final class Path extends XPathExpr
+	{
+		private final XPathExpr start;
+		private final boolean absolute;
+		private final Step[] steps;
+
+		Path(XPathExpr start, boolean absolute, List<Step> steps)
+		{
+			this.start = start;
+			this.absolute = absolute;
+			this.steps = optimize(steps);
+		}
+
+		/**
+		 * Replaces {@code descendant-or-self::node()/child::name} by {@code descendant::name} if the predicates of the child step do not depend on the context position.
+		 *
+		 * @param steps steps as parsed
+		 * @return optimized steps
+		 */
+		private static Step[] optimize(List<Step> steps)
+		{
+			List<Step> optimizedSteps = new ArrayList<>(steps.size());
+			for(int i = 0; i < steps.size(); i++)
+			{
+				Step step = steps.get(i);
+				if(i + 1 < steps.size() && step.isDescendantOrSelfNode())
+				{
+					Step nextStep = steps.get(i + 1);
+					if(nextStep.axis == AXIS_CHILD && !nextStep.hasPositionalPredicates())
+					{
+						optimizedSteps.add(new Step(AXIS_DESCENDANT, nextStep.test, nextStep.name, nextStep.predicates));
+						i++;
+						continue;
+					}
+				}
+				optimizedSteps.add(step);
+			}
+			return optimizedSteps.toArray(new Step[optimizedSteps.size()]);
+		}
+
+		Object evaluate(Context context)
+		{
+			List<Object> nodes;
+			if(start != null)
+			{
+				Object value = start.evaluate(context);
+				if(!(value instanceof List))
+					throw new RuntimeException("Location steps can only be applied to node-sets.");
+				nodes = asNodeSet(value);
+			}
+			else if(absolute)
+			{
+				nodes = Collections.<Object>singletonList(context.root);
+			}
+			else
+			{
+				nodes = Collections.singletonList(context.node);
+			}
+
+			for(Step step : steps)
+			{
+				if(nodes.isEmpty())
+					break;
+				nodes = step.select(nodes, context.root);
+			}
+			return nodes;
+		}
+
+		int getType()
+		{
+			return TYPE_NODESET;
+		}
+
+		boolean usesPosition()
+		{
+			return start != null && start.usesPosition();
+		}
+	}
+
+	/**
+	 * Location step consisting of an axis, a node test and predicates.
+	 */
+	static final class Step
+	{
+		private final int axis;
+		private final int test;
+		private final String name;
+		private final XPathExpr[] predicates;
+
+		Step(int axis, int test, String name, XPathExpr[] predicates)
+		{
+			this.axis = axis;
+			this.test = test;
+			this.name = name;
+			this.predicates = predicates;
+		}
+
+		private boolean isDescendantOrSelfNode()
+		{
+			return axis == AXIS_DESCENDANT_OR_SELF && test == TEST_NODE && predicates.length == 0;
+		}
+
+		private boolean hasPositionalPredicates()
+		{
+			for(XPathExpr predicate : predicates)
+			{
+				if(predicate.getType() == TYPE_NUMBER || predicate.usesPosition())
+					return true;
+			}
+			return false;
+		}
+
+		private boolean isReverseAxis()
+		{
+			return axis == AXIS_ANCESTOR || axis == AXIS_ANCESTOR_OR_SELF || axis == AXIS_PRECEDING || axis == AXIS_PRECEDING_SIBLING;
+		}
+
+		/**
+		 * Applies this step to all nodes of a node-set.
+		 *
+		 * @param contextNodes context nodes in document order
+		 * @param root         root node of the tree
+		 * @return selected nodes in document order
+		 */
+		List<Object> select(List<Object> contextNodes, Root root)
+		{
+			List<Object> result = new ArrayList<>();
+			for(Object contextNode : contextNodes)
+			{
+				List<Object> nodes = new ArrayList<>();
+				collect(contextNode, root, nodes);
+				for(XPathExpr predicate : predicates)
+					nodes = applyPredicate(nodes, predicate, root);
+				result.addAll(nodes);
+			}
+
+			if(contextNodes.size() > 1)
+				return sortAndRemoveDuplicates(result);
+			if(isReverseAxis())
+				Collections.reverse(result);
+			return result;
+		}
+
+		/**
+		 * Collects the nodes on the axis of this step matching the node test, in axis order.
+		 *
+		 * @param node  context node
+		 * @param root  root node of the tree
+		 * @param nodes list to which matching nodes are added
+		 */
+		private void collect(Object node, Root root, List<Object> nodes)
+		{
+			switch(axis)
+			{
+				case AXIS_CHILD:
+					if(node instanceof Root)
+					{
+						addIfMatches(root.topElement, nodes);
+					}
+					else if(node instanceof Element)
+					{
+						// the name index is only used if it exists, building it would keep a map for every context element
+						List<Element> children = test == TEST_NAME ? ((Element)node).getIndexedElementsByName(name) : null;
+						if(children != null)
+							nodes.addAll(children);
+						else
+							for(Node child = ((Element)node).getFirstChild(); child != null; child = child.getNextSibling())
+								addIfMatches(child, nodes);
+					}
+					break;
+				case AXIS_DESCENDANT_OR_SELF:
+				case AXIS_DESCENDANT:
+					if(axis == AXIS_DESCENDANT_OR_SELF)
+						addIfMatches(node, nodes);
+					if(node instanceof Root)
+					{
+						addIfMatches(root.topElement, nodes);
+						node = root.topElement;
+					}
+					if(node instanceof Element)
+					{
+						for(Node descendant = nextNode((Node)node, (Node)node, true); descendant != null; descendant = nextNode(descendant, (Node)node, true))
+							addIfMatches(descendant, nodes);
+					}
+					break;
+				case AXIS_SELF:
+					addIfMatches(node, nodes);
+					break;
+				case AXIS_ANCESTOR_OR_SELF:
+				case AXIS_ANCESTOR:
+					if(axis == AXIS_ANCESTOR_OR_SELF)
+						addIfMatches(node, nodes);
+					for(Object ancestor = parentOf(node, root); ancestor != null; ancestor = parentOf(ancestor, root))
+						addIfMatches(ancestor, nodes);
+					break;
+				case AXIS_PARENT:
+					Object parent = parentOf(node, root);
+					if(parent != null)
+						addIfMatches(parent, nodes);
+					break;
+				case AXIS_FOLLOWING_SIBLING:
+					if(node instanceof Node)
+					{
+						for(Node sibling = nextSibling((Node)node); sibling != null; sibling = nextSibling(sibling))
+							addIfMatches(sibling, nodes);
+					}
+					break;
+				case AXIS_PRECEDING_SIBLING:
+					if(node instanceof Node)
+					{
+						for(Node sibling = previousSibling((Node)node); sibling != null; sibling = previousSibling(sibling))
+							addIfMatches(sibling, nodes);
+					}
+					break;
+				case AXIS_FOLLOWING:
+					if(node instanceof Node || node instanceof Attribute)
+					{
+						Node start = node instanceof Attribute ? ((Attribute)node).owner : (Node)node;
+						for(Node following = nextNode(start, null, node instanceof Attribute); following != null; following = nextNode(following, null, true))
+							addIfMatches(following, nodes);
+					}
+					break;
+				case AXIS_PRECEDING:
+					if(node instanceof Node || node instanceof Attribute)
+					{
+						Node start = node instanceof Attribute ? ((Attribute)node).owner : (Node)node;
+						Map<Node, Boolean> ancestors = new IdentityHashMap<>();
+						for(Node ancestor = start; ancestor != null; ancestor = ancestor.getParent())
+							ancestors.put(ancestor, Boolean.TRUE);
+						for(Node preceding = previousNode(start); preceding != null; preceding = previousNode(preceding))
+						{
+							if(!ancestors.containsKey(preceding))
+								addIfMatches(preceding, nodes);
+						}
+					}
+					break;
+				case AXIS_ATTRIBUTE:
+					if(node instanceof Element)
+					{
+						Element element = (Element)node;
+						if(test == TEST_NAME)
+						{
+							String value = element.getAttribute(name);
+							if(value != null && ("id".equals(name) || element.hasAttributeWithName(name)))
+								nodes.add(new Attribute(element, name, value));
+						}
+						else if(test == TEST_ANY_NAME || test == TEST_NODE)
+						{
+							if(element.getId() != null)
+								nodes.add(new Attribute(element, "id", element.getId()));
+							for(int i = 0; i < element.getAttributeCount(); i++)
+								nodes.add(new Attribute(element, element.getAttributeName(i), element.getAttributeValue(i)));
+						}
+					}
+					break;
+			}
+		}
+
+		/**
+		 * Adds the node to the list if it matches the node test of this step. This method is not used for the attribute axis.
+		 *
+		 * @param node  node to be tested
+		 * @param nodes list to which the node is added
+		 */
+		private void addIfMatches(Object node, List<Object> nodes)
+		{
+			switch(test)
+			{
+				case TEST_NAME:
+					if(node instanceof Element && name.equals(((Element)node).getName()))
+						nodes.add(node);
+					break;
+				case TEST_ANY_NAME:
+					if(node instanceof Element)
+						nodes.add(node);
+					break;
+				case TEST_NODE:
+					nodes.add(node);
+					break;
+				case TEST_TEXT:
+					if(node instanceof TextNode)
+						nodes.add(node);
+					break;
+			}
+		}
+	}
+
+	/*
+	 * Functions
+	 */
+
+	static final class FunctionCall extends XPathExpr
+	{
+		private final String name;
+		private final XPathExpr[] arguments;
+
+		FunctionCall(String name, List<XPathExpr> arguments)
+		{
+			this.name = name;
+			this.arguments = arguments.toArray(new XPathExpr[arguments.size()]);
+		}
+
+		/**
+		 * Checks whether a function with the given name and number of arguments is supported.
+		 *
+		 * @param name          name of the function
+		 * @param argumentCount number of arguments
+		 * @return {@code true} if the function is supported, {@code false} otherwise
+		 */
+		static boolean isSupported(String name, int argumentCount)
+		{
+			switch(name)
+			{
+				case "last":
+				case "position":
+				case "true":
+				case "false":
+					return argumentCount == 0;
+				case "count":
+				case "id":
+				case "boolean":
+				case "not":
+				case "sum":
+				case "floor":
+				case "ceiling":
+				case "round":
+					return argumentCount == 1;
+				case "local-name":
+				case "name":
+				case "namespace-uri":
+				case "string":
+				case "string-length":
+				case "normalize-space":
+				case "number":
+					return argumentCount <= 1;
+				case "starts-with":
+				case "contains":
+				case "substring-before":
+				case "substring-after":
+					return argumentCount == 2;
+				case "substring":
+					return argumentCount == 2 || argumentCount == 3;
+				case "translate":
+					return argumentCount == 3;
+				case "concat":
+					return argumentCount >= 2;
+				default:
+					return false;
+			}
+		}
+
+		Object evaluate(Context context)
+		{
+			switch(name)
+			{
+				case "last":
+					return (double)context.size;
+				case "position":
+					return (double)context.position;
+				case "true":
+					return Boolean.TRUE;
+				case "false":
+					return Boolean.FALSE;
+				case "count":
+					return (double)nodeSetArgument(0, context).size();
+				case "id":
+					return selectById(arguments[0].evaluate(context), context.root);
+				case "local-name":
+				case "name":
+				{
+					Object node = arguments.length == 0 ? context.node : first(nodeSetArgument(0, context));
+					String nodeName = "";
+					if(node instanceof Element)
+						nodeName = ((Element)node).getName();
+					else if(node instanceof Attribute)
+						nodeName = ((Attribute)node).name;
+					if("local-name".equals(name) && nodeName.indexOf(':') >= 0)
+						nodeName = nodeName.substring(nodeName.indexOf(':') + 1);
+					return nodeName;
+				}
+				case "namespace-uri":
+					return "";
+				case "string":
+					return arguments.length == 0 ? stringValue(context.node) : toString(arguments[0].evaluate(context));
+				case "concat":
+				{
+					StringBuilder result = new StringBuilder();
+					for(XPathExpr argument : arguments)
+						result.append(toString(argument.evaluate(context)));
+					return result.toString();
+				}
+				case "starts-with":
+					return stringArgument(0, context).startsWith(stringArgument(1, context));
+				case "contains":
+					return stringArgument(0, context).contains(stringArgument(1, context));
+				case "substring-before":
+				{
+					String value = stringArgument(0, context);
+					int index = value.indexOf(stringArgument(1, context));
+					return index < 0 ? "" : value.substring(0, index);
+				}
+				case "substring-after":
+				{
+					String value = stringArgument(0, context);
+					String separator = stringArgument(1, context);
+					int index = value.indexOf(separator);
+					return index < 0 ? "" : value.substring(index + separator.length());
+				}
+				case "substring":
+					return substring(stringArgument(0, context), toNumber(arguments[1].evaluate(context)), arguments.length > 2 ? toNumber(arguments[2].evaluate(context)) : Double.POSITIVE_INFINITY);
+				case "string-length":
+					return (double)(arguments.length == 0 ? stringValue(context.node) : stringArgument(0, context)).length();
+				case "normalize-space":
+					return normalizeSpace(arguments.length == 0 ? stringValue(context.node) : stringArgument(0, context));
+				case "translate":
+					return translate(stringArgument(0, context), stringArgument(1, context), stringArgument(2, context));
+				case "boolean":
+					return toBoolean(arguments[0].evaluate(context));
+				case "not":
+					return !toBoolean(arguments[0].evaluate(context));
+				case "number":
+					return arguments.length == 0 ? stringToNumber(stringValue(context.node)) : toNumber(arguments[0].evaluate(context));
+				case "sum":
+				{
+					double sum = 0;
+					for(Object node : nodeSetArgument(0, context))
+						sum += stringToNumber(stringValue(node));
+					return sum;
+				}
+				case "floor":
+					return Math.floor(toNumber(arguments[0].evaluate(context)));
+				case "ceiling":
+					return Math.ceil(toNumber(arguments[0].evaluate(context)));
+				case "round":
+				{
+					double value = toNumber(arguments[0].evaluate(context));
+					if(Double.isNaN(value) || Double.isInfinite(value))
+						return value;
+					return Math.floor(value + 0.5d);
+				}
+				default:
+					throw new RuntimeException("Unsupported function: " + name);
+			}
+		}
+
+		int getType()
+		{
+			switch(name)
+			{
+				case "id":
+					return TYPE_NODESET;
+				case "last":
+				case "position":
+				case "count":
+				case "string-length":
+				case "number":
+				case "sum":
+				case "floor":
+				case "ceiling":
+				case "round":
+					return TYPE_NUMBER;
+				case "true":
+				case "false":
+				case "starts-with":
+				case "contains":
+				case "boolean":
+				case "not":
+					return TYPE_BOOLEAN;
+				default:
+					return TYPE_STRING;
+			}
+		}
+
+		boolean usesPosition()
+		{
+			if("last".equals(name) || "position".equals(name))
+				return true;
+			for(XPathExpr argument : arguments)
+			{
+				if(argument.usesPosition())
+					return true;
+			}
+			return false;
+		}
+
+		private String stringArgument(int index, Context context)
+		{
+			return XPathExpr.toString(arguments[index].evaluate(context));
+		}
+
+		private List<Object> nodeSetArgument(int index, Context context)
+		{
+			Object value = arguments[index].evaluate(context);
+			if(!(value instanceof List))
+				throw new RuntimeException("Argument of function " + name + " must be a node-set.");
+			return asNodeSet(value);
+		}
+
+		private static Object first(List<Object> nodes)
+		{
+			return nodes.isEmpty() ? null : nodes.get(0);
+		}
+
+		private static List<Object> selectById(Object value, Root root)
+		{
+			Set<String> ids = new HashSet<>();
+			if(value instanceof List)
+			{
+				for(Object node : asNodeSet(value))
+					Collections.addAll(ids, normalizeSpace(stringValue(node)).split(" "));
+			}
+			else
+			{
+				Collections.addAll(ids, normalizeSpace(XPathExpr.toString(value)).split(" "));
+			}
+
+			List<Object> result = new ArrayList<>();
+			for(Node node = root.topElement; node != null; node = nextNode(node, root.topElement, true))
+			{
+				if(node instanceof Element && ((Element)node).getId() != null && ids.contains(((Element)node).getId()))
+					result.add(node);
+			}
+			return result;
+		}
+
+		private static String substring(String value, double start, double length)
+		{
+			double first = Math.floor(start + 0.5d);
+			double last = first + (Double.isInfinite(length) ? length : Math.floor(length + 0.5d));
+			if(Double.isNaN(first) || Double.isNaN(last))
+				return "";
+
+			double from = Math.max(first, 1);
+			double to = Math.min(last, value.length() + 1);
+			if(from >= to)
+				return "";
+			return value.substring((int)from - 1, (int)to - 1);
+		}
+
+		private static String translate(String value, String from, String to)
+		{
+			StringBuilder result = new StringBuilder(value.length());
+			for(int i = 0; i < value.length(); i++)
+			{
+				char c = value.charAt(i);
+				int index = from.indexOf(c);
+				if(index < 0)
+					result.append(c);
+				else if(index < to.length())
+					result.append(to.charAt(index));
+			}
+			return result.toString();
+		}
+	}
+
+	/*
+	 * Helpers
+	 */
+
+	@SuppressWarnings("unchecked")
+	static List<Object> asNodeSet(Object value)
+	{
+		return (List<Object>)value;
+	}
+
+	/**
+	 * Filters a list of nodes by a predicate. The positions of the nodes in the list are used as context positions.
+	 *
+	 * @param nodes     nodes to be filtered
+	 * @param predicate predicate expression
+	 * @param root      root node of the tree
+	 * @return nodes for which the predicate is true
+	 */
+	static List<Object> applyPredicate(List<Object> nodes, XPathExpr predicate, Root root)
+	{
+		if(predicate instanceof NumberLiteral)
+		{
+			double position = (Double)predicate.evaluate(null);
+			if(position >= 1 && position <= nodes.size() && position == Math.rint(position))
+				return Collections.singletonList(nodes.get((int)position - 1));
+			return Collections.emptyList();
+		}
+
+		List<Object> result = new ArrayList<>();
+		int size = nodes.size();
+		for(int i = 0; i < size; i++)
+		{
+			Object node = nodes.get(i);
+			Object value = predicate.evaluate(new Context(node, i + 1, size, root));
+			if(value instanceof Double)
+			{
+				if((Double)value == i + 1)
+					result.add(node);
+			}
+			else if(toBoolean(value))
+			{
+				result.add(node);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Compares two values according to the XPath comparison rules.
+	 *
+	 * @param operator one of {@code =}, {@code !=}, {@code <}, {@code <=}, {@code >} and {@code >=}
+	 * @param left     left value
+	 * @param right    right value
+	 * @return result of the comparison
+	 */
+	static boolean compare(String operator, Object left, Object right)
+	{
+		if(left instanceof List && right instanceof List)
+		{
+			List<Object> rightNodes = asNodeSet(right);
+			String[] rightValues = new String[rightNodes.size()];
+			for(int i = 0; i < rightValues.length; i++)
+				rightValues[i] = stringValue(rightNodes.get(i));
+
+			for(Object leftNode : asNodeSet(left))
+			{
+				String leftValue = stringValue(leftNode);
+				for(String rightValue : rightValues)
+				{
+					if(compareAtomic(operator, leftValue, rightValue))
+						return true;
+				}
+			}
+			return false;
+		}
+		else if(left instanceof List)
+		{
+			if(right instanceof Boolean)
+				return compareAtomic(operator, toBoolean(left), right);
+
+			for(Object node : asNodeSet(left))
+			{
+				Object value = right instanceof Double ? (Object)stringToNumber(stringValue(node)) : stringValue(node);
+				if(compareAtomic(operator, value, right))
+					return true;
+			}
+			return false;
+		}
+		else if(right instanceof List)
+		{
+			return compare(mirror(operator), right, left);
+		}
+		else
+		{
+			return compareAtomic(operator, left, right);
+		}
+	}
+
+	private static String mirror(String operator)
+	{
+		switch(operator)
+		{
+			case "<":
+				return ">";
+			case "<=":
+				return ">=";
+			case ">":
+				return "<";
+			case ">=":
+				return "<=";
+			default:
+				return operator;
+		}
+	}
+
+	private static boolean compareAtomic(String operator, Object left, Object right)
+	{
+		if("=".equals(operator) || "!=".equals(operator))
+		{
+			boolean equal;
+			if(left instanceof Boolean || right instanceof Boolean)
+				equal = toBoolean(left) == toBoolean(right);
+			else if(left instanceof Double || right instanceof Double)
+				equal = toNumber(left) == toNumber(right);
+			else
+				equal = toString(left).equals(toString(right));
+			return "=".equals(operator) == equal;
+		}
+
+		double leftValue = toNumber(left);
+		double rightValue = toNumber(right);
+		switch(operator)
+		{
+			case "<":
+				return leftValue < rightValue;
+			case "<=":
+				return leftValue <= rightValue;
+			case ">":
+				return leftValue > rightValue;
+			default:
+				return leftValue >= rightValue;
+		}
+	}
+
+	static boolean toBoolean(Object value)
+	{
+		if(value instanceof Boolean)
+			return (Boolean)value;
+		if(value instanceof Double)
+			return (Double)value != 0 && !Double.isNaN((Double)value);
+		if(value instanceof String)
+			return !((String)value).isEmpty();
+		return !asNodeSet(value).isEmpty();
+	}
+
+	static double toNumber(Object value)
+	{
+		if(value instanceof Double)
+			return (Double)value;
+		if(value instanceof Boolean)
+			return (Boolean)value ? 1 : 0;
+		return stringToNumber(toString(value));
+	}
+
+	static String toString(Object value)
+	{
+		if(value instanceof String)
+			return (String)value;
+		if(value instanceof Boolean)
+			return value.toString();
+		if(value instanceof Double)
+			return numberToString((Double)value);
+
+		List<Object> nodes = asNodeSet(value);
+		return nodes.isEmpty() ? "" : stringValue(nodes.get(0));
+	}
+
+	/**
+	 * Returns the string-value of a node, which is the concatenation of all descendant text nodes for elements and the root node.
+	 *
+	 * @param node node
+	 * @return string-value of the node
+	 */
+	static String stringValue(Object node)
+	{
+		if(node instanceof TextNode)
+			return ((TextNode)node).getText() == null ? "" : ((TextNode)node).getText();
+		if(node instanceof Attribute)
+			return ((Attribute)node).value;
+
+		Element element = node instanceof Root ? ((Root)node).topElement : (Element)node;
+		StringBuilder text = new StringBuilder();
+		for(Node descendant = nextNode(element, element, true); descendant != null; descendant = nextNode(descendant, element, true))
+		{
+			if(descendant instanceof TextNode && ((TextNode)descendant).getText() != null)
+				text.append(((TextNode)descendant).getText());
+		}
+		return text.toString();
+	}
+
+	static double stringToNumber(String value)
+	{
+		int start = 0;
+		int end = value.length();
+		while(start < end && isWhitespace(value.charAt(start)))
+			start++;
+		while(end > start && isWhitespace(value.charAt(end - 1)))
+			end--;
+
+		// Number ::= '-'? (Digits ('.' Digits?)? | '.' Digits)
+		int i = start;
+		if(i < end && value.charAt(i) == '-')
+			i++;
+		int digits = 0;
+		boolean dot = false;
+		for(; i < end; i++)
+		{
+			char c = value.charAt(i);
+			if(c >= '0' && c <= '9')
+				digits++;
+			else if(c == '.' && !dot)
+				dot = true;
+			else
+				return Double.NaN;
+		}
+		if(digits == 0)
+			return Double.NaN;
+		return Double.parseDouble(value.substring(start, end));
+	}
+
+	static String numberToString(double value)
+	{
+		if(Double.isNaN(value))
+			return "NaN";
+		if(Double.isInfinite(value))
+			return value > 0 ? "Infinity" : "-Infinity";
+		if(value == Math.rint(value) && Math.abs(value) < 1e15)
+			return Long.toString((long)value);
+		return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+	}
+
+	static String normalizeSpace(String value)
+	{
+		StringBuilder result = new StringBuilder(value.length());
+		boolean space = false;
+		for(int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			if(isWhitespace(c))
+			{
+				space = result.length() > 0;
+			}
+			else
+			{
+				if(space)
+					result.append(' ');
+				result.append(c);
+				space = false;
+			}
+		}
+		return result.toString();
+	}
+
+	private static boolean isWhitespace(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+	}
+
+	/*
+	 * Tree navigation
+	 */
+
+	/**
+	 * Returns the position of a node in its parent's children list.
+	 *
+	 * @param node element or text node
+	 * @return position of the node or -1 if it has no parent
+	 */
+	static int childIndex(Node node)
+	{
+		if(node instanceof Element)
+			return ((Element)node).getChildIndex();
+		return ((TextNode)node).getChildIndex();
+	}
+
+	static Node nextSibling(Node node)
+	{
+		return node.getNextSibling();
+	}
+
+	static Node previousSibling(Node node)
+	{
+		return node.getPreviousSibling();
+	}
+
+	/**
+	 * Returns the node following the given node in document order.
+	 *
+	 * @param node            current node
+	 * @param scope           node whose subtree must not be left or {@code null} if the whole tree may be traversed
+	 * @param enterChildren   {@code true} if the children of the current node should be visited, {@code false} if they should be skipped
+	 * @return next node or {@code null} if there are no more nodes
+	 */
+	static Node nextNode(Node node, Node scope, boolean enterChildren)
+	{
+		if(enterChildren && node instanceof Element && ((Element)node).hasChildren())
+			return ((Element)node).getFirstChild();
+
+		while(node != scope)
+		{
+			Node sibling = nextSibling(node);
+			if(sibling != null)
+				return sibling;
+			node = node.getParent();
+			if(node == null)
+				return null;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the node preceding the given node in document order.
+	 *
+	 * @param node current node
+	 * @return previous node or {@code null} if there are no more nodes
+	 */
+	static Node previousNode(Node node)
+	{
+		Node sibling = previousSibling(node);
+		if(sibling == null)
+			return node.getParent();
+
+		while(sibling instanceof Element && ((Element)sibling).hasChildren())
+			sibling = ((Element)sibling).getLastChild();
+		return sibling;
+	}
+
+	static Object parentOf(Object node, Root root)
+	{
+		if(node instanceof Attribute)
+			return ((Attribute)node).owner;
+		if(node instanceof Node)
+			return ((Node)node).getParent() != null ? ((Node)node).getParent() : root;
+		return null;
+	}
+
+	/**
+	 * Sorts nodes in document order and removes duplicates.
+	 *
+	 * @param nodes nodes to be sorted
+	 * @return sorted list without duplicates
+	 */
+	static List<Object> sortAndRemoveDuplicates(List<Object> nodes)
+	{
+		Map<Object, Boolean> visitedNodes = new IdentityHashMap<>();
+		Set<Attribute> visitedAttributes = new HashSet<>();
+		List<Object> result = new ArrayList<>(nodes.size());
+		for(Object node : nodes)
+		{
+			if(node instanceof Attribute ? visitedAttributes.add((Attribute)node) : visitedNodes.put(node, Boolean.TRUE) == null)
+				result.add(node);
+		}
+		Collections.sort(result, DOCUMENT_ORDER);
+		return result;
+	}
+
+	/**
+	 * Compares two nodes of the same tree by document order. Attributes follow their owner element and precede its children.
+	 *
+	 * @param o1 first node
+	 * @param o2 second node
+	 * @return negative value if the first node comes first, positive value if the second node comes first, 0 if they are the same
+	 */
+	static int compareDocumentOrder(Object o1, Object o2)
+	{
+		if(o1 == o2 || (o1 instanceof Attribute && o1.equals(o2)))
+			return 0;
+		if(o1 instanceof Root)
+			return -1;
+		if(o2 instanceof Root)
+			return 1;
+
+		Node node1 = o1 instanceof Attribute ? ((Attribute)o1).owner : (Node)o1;
+		Node node2 = o2 instanceof Attribute ? ((Attribute)o2).owner : (Node)o2;
+		if(node1 == node2)
+		{
+			// attributes of the same element or element and its own attribute
+			if(!(o1 instanceof Attribute))
+				return -1;
+			if(!(o2 instanceof Attribute))
+				return 1;
+			String name1 = ((Attribute)o1).name;
+			String name2 = ((Attribute)o2).name;
+			if("id".equals(name1))
+				return -1;
+			if("id".equals(name2))
+				return 1;
+			return name1.compareTo(name2);
+		}
+
+		int depth1 = depth(node1);
+		int depth2 = depth(node2);
+		while(depth1 > depth2)
+		{
+			node1 = node1.getParent();
+			depth1--;
+		}
+		while(depth2 > depth1)
+		{
+			node2 = node2.getParent();
+			depth2--;
+		}
+
+		// one node is an ancestor of the other
+		if(node1 == node2)
+			return depth(o1 instanceof Attribute ? ((Attribute)o1).owner : (Node)o1) < depth(o2 instanceof Attribute ? ((Attribute)o2).owner : (Node)o2) ? -1 : 1;
+
+		while(node1.getParent() != node2.getParent())
+		{
+			node1 = node1.getParent();
+			node2 = node2.getParent();
+		}
+		if(node1.getParent() == null)
+			return Integer.compare(System.identityHashCode(node1), System.identityHashCode(node2));
+		return Integer.compare(childIndex(node1), childIndex(node2));
+	}
+
+	private static int depth(Node node)
+	{
+		int depth = 0;
+		for(Element parent = node.getParent(); parent != null; parent = parent.getParent())
+			depth++;
+		return depth;
+	}
+}
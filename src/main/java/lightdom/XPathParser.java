@@ -0,0 +1,548 @@
+package lightdom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser for the subset of XPath 1.0 supported by the native XPath engine. Supported are all axes except the namespace axis, name tests, the node types {@code node()}, {@code text()}, {@code comment()} and {@code processing-instruction()}, predicates, the operators of XPath 1.0 and the core function library except {@code lang()}. Variable references are not supported. This parser throws an IllegalArgumentException if the expression is not valid or uses unsupported features.
+ *
+ * @author Sandro Ropelato
+ * @version 1.1.5-SNAPSHOT
+ * @since 1.1.5
+ */
+final class XPathParser
+{
+	private static final String NAME = "name";
+	private static final String LITERAL = "literal";
+	private static final String NUMBER = "number";
+	private static final String END = "end";
+
+	private final String expression;
+	private final List<Token> tokens;
+	private int position = 0;
+
+	private XPathParser(String expression)
+	{
+		this.expression = expression;
+		this.tokens = tokenize(expression);
+	}
+
+	/**
+	 * Parses an XPath expression.
+	 *
+	 * @param expression XPath expression
+	 * @return parsed expression
+	 * @throws IllegalArgumentException if the expression is invalid or not supported
+	 */
+	static XPathExpr parse(String expression)
+	{
+		if(expression == null)
+			throw new IllegalArgumentException("Expression must not be null.");
+
+		XPathParser parser = new XPathParser(expression);
+		XPathExpr expr = parser.parseOrExpr();
+		if(!parser.peek().is(END))
+			throw parser.error("unexpected token '" + parser.peek().text + "'");
+		return expr;
+	}
+
+	/**
+	 * Token of an XPath expression. The kind of a token is either its text (for operators and punctuation) or one of {@code name}, {@code literal}, {@code number} and {@code end}.
+	 */
+	private static final class Token
+	{
+		final String kind;
+		final String text;
+
+		Token(String kind, String text)
+		{
+			this.kind = kind;
+			this.text = text;
+		}
+
+		boolean is(String kind)
+		{
+			return this.kind.equals(kind);
+		}
+	}
+
+	/*
+	 * Lexical analysis
+	 */
+
+	private static List<Token> tokenize(String expression)
+	{
+		List<Token> tokens = new ArrayList<>();
+		int length = expression.length();
+		int i = 0;
+		while(i < length)
+		{
+			char c = expression.charAt(i);
+			if(c == ' ' || c == '\t' || c == '\r' || c == '\n')
+			{
+				i++;
+			}
+			else if(c == '"' || c == '\'')
+			{
+				int end = expression.indexOf(c, i + 1);
+				if(end < 0)
+					throw new IllegalArgumentException("Unterminated literal in XPath expression: " + expression);
+				tokens.add(new Token(LITERAL, expression.substring(i + 1, end)));
+				i = end + 1;
+			}
+			else if(isDigit(c) || (c == '.' && i + 1 < length && isDigit(expression.charAt(i + 1))))
+			{
+				int start = i;
+				while(i < length && isDigit(expression.charAt(i)))
+					i++;
+				if(i < length && expression.charAt(i) == '.')
+				{
+					i++;
+					while(i < length && isDigit(expression.charAt(i)))
+						i++;
+				}
+				tokens.add(new Token(NUMBER, expression.substring(start, i)));
+			}
+			else if(isNameStartChar(c))
+			{
+				int start = i;
+				i = skipName(expression, i);
+				// qualified name or prefix:*
+				if(i + 1 < length && expression.charAt(i) == ':' && expression.charAt(i + 1) != ':')
+				{
+					if(expression.charAt(i + 1) == '*')
+						i += 2;
+					else if(isNameStartChar(expression.charAt(i + 1)))
+						i = skipName(expression, i + 1);
+				}
+				String name = expression.substring(start, i);
+				if(isOperatorContext(tokens) && (name.equals("and") || name.equals("or") || name.equals("mod") || name.equals("div")))
+					tokens.add(new Token(name, name));
+				else
+					tokens.add(new Token(NAME, name));
+			}
+			else if(c == '*')
+			{
+				if(isOperatorContext(tokens))
+					tokens.add(new Token("*", "*"));
+				else
+					tokens.add(new Token(NAME, "*"));
+				i++;
+			}
+			else
+			{
+				String symbol = null;
+				if(i + 1 < length)
+				{
+					String twoChars = expression.substring(i, i + 2);
+					if(twoChars.equals("//") || twoChars.equals("..") || twoChars.equals("::") || twoChars.equals("!=") || twoChars.equals("<=") || twoChars.equals(">="))
+						symbol = twoChars;
+				}
+				if(symbol == null && "/|+-=<>()[].@,".indexOf(c) >= 0)
+					symbol = String.valueOf(c);
+				if(symbol == null)
+					throw new IllegalArgumentException("Unsupported character '" + c + "' in XPath expression: " + expression);
+				tokens.add(new Token(symbol, symbol));
+				i += symbol.length();
+			}
+		}
+		tokens.add(new Token(END, ""));
+		return tokens;
+	}
+
+	/**
+	 * Checks whether the next token has to be interpreted as operator, which is the case if there is a preceding token and it is not one of {@code @}, {@code ::}, {@code (}, {@code [}, {@code ,} or an operator.
+	 *
+	 * @param tokens preceding tokens
+	 * @return {@code true} if the next token is an operator, {@code false} otherwise
+	 */
+	private static boolean isOperatorContext(List<Token> tokens)
+	{
+		if(tokens.isEmpty())
+			return false;
+
+		String kind = tokens.get(tokens.size() - 1).kind;
+		switch(kind)
+		{
+			case "@":
+			case "::":
+			case "(":
+			case "[":
+			case ",":
+			case "and":
+			case "or":
+			case "mod":
+			case "div":
+			case "*":
+			case "/":
+			case "//":
+			case "|":
+			case "+":
+			case "-":
+			case "=":
+			case "!=":
+			case "<":
+			case "<=":
+			case ">":
+			case ">=":
+				return false;
+			default:
+				return true;
+		}
+	}
+
+	private static int skipName(String expression, int i)
+	{
+		while(i < expression.length() && isNameChar(expression.charAt(i)))
+			i++;
+		return i;
+	}
+
+	private static boolean isDigit(char c)
+	{
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isNameStartChar(char c)
+	{
+		return Character.isLetter(c) || c == '_';
+	}
+
+	private static boolean isNameChar(char c)
+	{
+		return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+	}
+
+	/*
+	 * Syntax analysis
+	 */
+
+	private Token peek()
+	{
+		return tokens.get(position);
+	}
+
+	private Token peek(int offset)
+	{
+		return tokens.get(Math.min(position + offset, tokens.size() - 1));
+	}
+
+	private Token next()
+	{
+		Token token = tokens.get(position);
+		if(!token.is(END))
+			position++;
+		return token;
+	}
+
+	private void expect(String kind)
+	{
+		if(!peek().is(kind))
+			throw error("expected '" + kind + "' but found '" + peek().text + "'");
+		next();
+	}
+
+	private IllegalArgumentException error(String message)
+	{
+		return new IllegalArgumentException("Invalid or unsupported XPath expression (" + message + "): " + expression);
+	}
+
+	private XPathExpr parseOrExpr()
+	{
+		XPathExpr expr = parseAndExpr();
+		while(peek().is("or"))
+		{
+			next();
+			expr = new XPathExpr.Or(expr, parseAndExpr());
+		}
+		return expr;
+	}
+
+	private XPathExpr parseAndExpr()
+	{
+		XPathExpr expr = parseEqualityExpr();
+		while(peek().is("and"))
+		{
+			next();
+			expr = new XPathExpr.And(expr, parseEqualityExpr());
+		}
+		return expr;
+	}
+
+	private XPathExpr parseEqualityExpr()
+	{
+		XPathExpr expr = parseRelationalExpr();
+		while(peek().is("=") || peek().is("!="))
+		{
+			String operator = next().kind;
+			expr = new XPathExpr.Comparison(operator, expr, parseRelationalExpr());
+		}
+		return expr;
+	}
+
+	private XPathExpr parseRelationalExpr()
+	{
+		XPathExpr expr = parseAdditiveExpr();
+		while(peek().is("<") || peek().is("<=") || peek().is(">") || peek().is(">="))
+		{
+			String operator = next().kind;
+			expr = new XPathExpr.Comparison(operator, expr, parseAdditiveExpr());
+		}
+		return expr;
+	}
+
+	private XPathExpr parseAdditiveExpr()
+	{
+		XPathExpr expr = parseMultiplicativeExpr();
+		while(peek().is("+") || peek().is("-"))
+		{
+			String operator = next().kind;
+			expr = new XPathExpr.Arithmetic(operator, expr, parseMultiplicativeExpr());
+		}
+		return expr;
+	}
+
+	private XPathExpr parseMultiplicativeExpr()
+	{
+		XPathExpr expr = parseUnaryExpr();
+		while(peek().is("*") || peek().is("div") || peek().is("mod"))
+		{
+			String operator = next().kind;
+			expr = new XPathExpr.Arithmetic(operator, expr, parseUnaryExpr());
+		}
+		return expr;
+	}
+
+	private XPathExpr parseUnaryExpr()
+	{
+		if(peek().is("-"))
+		{
+			next();
+			return new XPathExpr.Negation(parseUnaryExpr());
+		}
+		return parseUnionExpr();
+	}
+
+	private XPathExpr parseUnionExpr()
+	{
+		XPathExpr expr = parsePathExpr();
+		while(peek().is("|"))
+		{
+			next();
+			expr = new XPathExpr.Union(expr, parsePathExpr());
+		}
+		return expr;
+	}
+
+	private XPathExpr parsePathExpr()
+	{
+		Token token = peek();
+		boolean filterExpr = token.is(LITERAL) || token.is(NUMBER) || token.is("(") || (token.is(NAME) && peek(1).is("(") && !isNodeType(token.text));
+		if(!filterExpr)
+			return parseLocationPath();
+
+		XPathExpr primary = parsePrimaryExpr();
+		List<XPathExpr> predicates = parsePredicates();
+		if(!predicates.isEmpty())
+			primary = new XPathExpr.Filter(primary, predicates);
+
+		if(peek().is("/") || peek().is("//"))
+		{
+			List<XPathExpr.Step> steps = new ArrayList<>();
+			parseRelativeLocationPath(steps, true);
+			return new XPathExpr.Path(primary, false, steps);
+		}
+		return primary;
+	}
+
+	private XPathExpr parsePrimaryExpr()
+	{
+		Token token = next();
+		if(token.is(LITERAL))
+			return new XPathExpr.Literal(token.text);
+		if(token.is(NUMBER))
+			return new XPathExpr.NumberLiteral(Double.parseDouble(token.text));
+		if(token.is("("))
+		{
+			XPathExpr expr = parseOrExpr();
+			expect(")");
+			return expr;
+		}
+
+		// function call
+		expect("(");
+		List<XPathExpr> arguments = new ArrayList<>();
+		if(!peek().is(")"))
+		{
+			arguments.add(parseOrExpr());
+			while(peek().is(","))
+			{
+				next();
+				arguments.add(parseOrExpr());
+			}
+		}
+		expect(")");
+
+		if(!XPathExpr.FunctionCall.isSupported(token.text, arguments.size()))
+			throw error("unsupported function " + token.text + " with " + arguments.size() + " arguments");
+		return new XPathExpr.FunctionCall(token.text, arguments);
+	}
+
+	private XPathExpr parseLocationPath()
+	{
+		List<XPathExpr.Step> steps = new ArrayList<>();
+		if(peek().is("/"))
+		{
+			next();
+			if(startsStep(peek()))
+				parseRelativeLocationPath(steps, false);
+			return new XPathExpr.Path(null, true, steps);
+		}
+		else if(peek().is("//"))
+		{
+			parseRelativeLocationPath(steps, true);
+			return new XPathExpr.Path(null, true, steps);
+		}
+		else
+		{
+			parseRelativeLocationPath(steps, false);
+			return new XPathExpr.Path(null, false, steps);
+		}
+	}
+
+	/**
+	 * Parses a relative location path and adds its steps to the list.
+	 *
+	 * @param steps         list to which the steps are added
+	 * @param leadingSlash  {@code true} if the path starts with {@code /} or {@code //} which has not been consumed yet
+	 */
+	private void parseRelativeLocationPath(List<XPathExpr.Step> steps, boolean leadingSlash)
+	{
+		if(!leadingSlash)
+			steps.add(parseStep());
+
+		while(peek().is("/") || peek().is("//"))
+		{
+			if(next().is("//"))
+				steps.add(new XPathExpr.Step(XPathExpr.AXIS_DESCENDANT_OR_SELF, XPathExpr.TEST_NODE, null, new XPathExpr[0]));
+			steps.add(parseStep());
+		}
+	}
+
+	private static boolean startsStep(Token token)
+	{
+		return token.is(NAME) || token.is(".") || token.is("..") || token.is("@");
+	}
+
+	private XPathExpr.Step parseStep()
+	{
+		if(peek().is("."))
+		{
+			next();
+			return new XPathExpr.Step(XPathExpr.AXIS_SELF, XPathExpr.TEST_NODE, null, new XPathExpr[0]);
+		}
+		if(peek().is(".."))
+		{
+			next();
+			return new XPathExpr.Step(XPathExpr.AXIS_PARENT, XPathExpr.TEST_NODE, null, new XPathExpr[0]);
+		}
+
+		int axis = XPathExpr.AXIS_CHILD;
+		if(peek().is("@"))
+		{
+			next();
+			axis = XPathExpr.AXIS_ATTRIBUTE;
+		}
+		else if(peek().is(NAME) && peek(1).is("::"))
+		{
+			axis = parseAxis(next().text);
+			next();
+		}
+
+		Token token = next();
+		if(!token.is(NAME))
+			throw error("expected node test but found '" + token.text + "'");
+
+		int test;
+		String name = null;
+		if(peek().is("(") && isNodeType(token.text))
+		{
+			next();
+			if(token.text.equals("processing-instruction") && peek().is(LITERAL))
+				next();
+			expect(")");
+			if(token.text.equals("node"))
+				test = XPathExpr.TEST_NODE;
+			else if(token.text.equals("text"))
+				test = XPathExpr.TEST_TEXT;
+			else
+				test = XPathExpr.TEST_NONE;
+		}
+		else if(token.text.equals("*"))
+		{
+			test = XPathExpr.TEST_ANY_NAME;
+		}
+		else if(token.text.endsWith(":*"))
+		{
+			throw error("namespace prefixes are not supported");
+		}
+		else
+		{
+			test = XPathExpr.TEST_NAME;
+			name = token.text;
+		}
+
+		List<XPathExpr> predicates = parsePredicates();
+		return new XPathExpr.Step(axis, test, name, predicates.toArray(new XPathExpr[predicates.size()]));
+	}
+
+	private List<XPathExpr> parsePredicates()
+	{
+		List<XPathExpr> predicates = new ArrayList<>();
+		while(peek().is("["))
+		{
+			next();
+			predicates.add(parseOrExpr());
+			expect("]");
+		}
+		return predicates;
+	}
+
+	private int parseAxis(String axisName)
+	{
+		switch(axisName)
+		{
+			case "child":
+				return XPathExpr.AXIS_CHILD;
+			case "descendant":
+				return XPathExpr.AXIS_DESCENDANT;
+			case "descendant-or-self":
+				return XPathExpr.AXIS_DESCENDANT_OR_SELF;
+			case "self":
+				return XPathExpr.AXIS_SELF;
+			case "parent":
+				return XPathExpr.AXIS_PARENT;
+			case "ancestor":
+				return XPathExpr.AXIS_ANCESTOR;
+			case "ancestor-or-self":
+				return XPathExpr.AXIS_ANCESTOR_OR_SELF;
+			case "following-sibling":
+				return XPathExpr.AXIS_FOLLOWING_SIBLING;
+			case "preceding-sibling":
+				return XPathExpr.AXIS_PRECEDING_SIBLING;
+			case "following":
+				return XPathExpr.AXIS_FOLLOWING;
+			case "preceding":
+				return XPathExpr.AXIS_PRECEDING;
+			case "attribute":
+				return XPathExpr.AXIS_ATTRIBUTE;
+			default:
+				throw error("unsupported axis " + axisName);
+		}
+	}
+
+	private static boolean isNodeType(String name)
+	{
+		return name.equals("node") || name.equals("text") || name.equals("comment") || name.equals("processing-instruction");
+	}
+}
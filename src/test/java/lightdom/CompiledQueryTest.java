@@ -0,0 +1,103 @@
+package lightdom;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CompiledQueryTest
+{
+	private Document doc = null;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		doc = Document.fromFile("TestFiles/books.xml");
+	}
+
+	@Test
+	public void testCompiledQuery() throws Exception
+	{
+		CompiledQuery query = CompiledQuery.compile("title");
+		Assert.assertEquals("title", query.getQuery());
+
+		for(Element book : doc.getRootElement().getElementsByName("book"))
+			Assert.assertTrue(book.getElementByQuery(query) == book.getElementByName("title"));
+	}
+
+	@Test
+	public void testConcurrentEvaluation() throws Exception
+	{
+		final CompiledQuery nativeQuery = CompiledQuery.compile("book[price > 30]/title");
+		final CompiledQuery w3cQuery = CompiledQuery.compile("book[lang('en') or price > 30]/title");
+
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try
+		{
+			List<Future<Boolean>> futures = new ArrayList<>();
+			for(int i = 0; i < 16; i++)
+			{
+				futures.add(executorService.submit(new Callable<Boolean>()
+				{
+					@Override
+					public Boolean call() throws Exception
+					{
+						for(int j = 0; j < 50; j++)
+						{
+							if(nativeQuery.getElements(doc.getRootElement()).size() != 4)
+								return false;
+							if(w3cQuery.getElements(doc.getRootElement()).size() != 4)
+								return false;
+						}
+						return true;
+					}
+				}));
+			}
+
+			for(Future<Boolean> future : futures)
+				Assert.assertTrue(future.get());
+		}
+		finally
+		{
+			executorService.shutdown();
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testInvalidQuery() throws Exception
+	{
+		CompiledQuery.compile("book[@id = 'bk101'");
+	}
+
+	@Test
+	public void testCache() throws Exception
+	{
+		int cacheSize = CompiledQuery.getCacheSize();
+		try
+		{
+			CompiledQuery.setCacheSize(2);
+			CompiledQuery query = CompiledQuery.getCached("book/title");
+			Assert.assertTrue(query == CompiledQuery.getCached("book/title"));
+
+			// evict least recently used query
+			CompiledQuery.getCached("book/author");
+			CompiledQuery.getCached("book/title");
+			CompiledQuery.getCached("book/genre");
+			Assert.assertTrue(query == CompiledQuery.getCached("book/title"));
+
+			CompiledQuery.getCached("book/price");
+			CompiledQuery.getCached("book/genre");
+			Assert.assertFalse(query == CompiledQuery.getCached("book/title"));
+		}
+		finally
+		{
+			CompiledQuery.setCacheSize(cacheSize);
+		}
+	}
+}
@@ -9,8 +9,11 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 public class DocumentTest
 {
@@ -165,6 +168,43 @@ public class DocumentTest
 		}
 	}
 
+	@Test
+	public void testFromW3CDocumentCDATA() throws Exception
+	{
+		String xml = "<a id=\"x\" k=\"v\">one <![CDATA[<two>]]> three<b/></a>";
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setCoalescing(false);
+		org.w3c.dom.Document w3cDocument = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+
+		// CDATA sections are imported and joined with adjacent text
+		Element root = Document.fromW3CDocument(w3cDocument).getRootElement();
+		Assert.assertEquals("x", root.getId());
+		Assert.assertEquals("v", root.getAttribute("k"));
+		Assert.assertEquals(2, root.getChildCount());
+		Assert.assertEquals("one <two> three", root.getTextNodes().get(0).getText());
+	}
+
+	@Test
+	public void testFromW3CDocumentDeep() throws Exception
+	{
+		org.w3c.dom.Document w3cDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		org.w3c.dom.Node w3cNode = w3cDocument.appendChild(w3cDocument.createElement("level"));
+		for(int i = 0; i < 100000; i++)
+			w3cNode = w3cNode.appendChild(w3cDocument.createElement("level"));
+		w3cNode.appendChild(w3cDocument.createTextNode("bottom"));
+
+		// importing does not overflow the stack
+		Element element = Document.fromW3CDocument(w3cDocument).getRootElement();
+		int depth = 0;
+		while(element.getFirstChild() instanceof Element)
+		{
+			element = (Element)element.getFirstChild();
+			depth++;
+		}
+		Assert.assertEquals(100000, depth);
+		Assert.assertEquals("bottom", element.getText());
+	}
+
 	@Test
 	public void testToW3CDocument() throws Exception
 	{
@@ -188,4 +228,261 @@ public class DocumentTest
 			throw new RuntimeException(e);
 		}
 	}
+
+	@Test
+	public void testEncodeValueForWriting() throws Exception
+	{
+		String value = "nothing to escape";
+		Assert.assertTrue(value == Document.encodeValueForWriting(value));
+		Assert.assertTrue(value == Document.encodeTextForWriting(value));
+
+		Assert.assertEquals("&lt;a href=&quot;x&quot;&gt; &amp; &apos;y&apos;", Document.encodeValueForWriting("<a href=\"x\"> & 'y'"));
+		Assert.assertEquals("&lt;a href=\"x\"&gt; &amp; 'y'", Document.encodeTextForWriting("<a href=\"x\"> & 'y'"));
+
+		StringWriter writer = new StringWriter();
+		Document.encodeValueForWriting("'a' & b", writer);
+		Document.encodeTextForWriting("'a' & b", writer);
+		Assert.assertEquals("&apos;a&apos; &amp; b'a' &amp; b", writer.toString());
+	}
+
+	@Test
+	public void testWhitespacePolicy() throws Exception
+	{
+		byte[] xml = "<root>\n\t<a>\tx &amp; &amp; y</a>\n\t<b>\n\t</b>\n</root>".getBytes(StandardCharsets.UTF_8);
+
+		Element root = Document.fromInputStream(new ByteArrayInputStream(xml)).getRootElement();
+		Assert.assertEquals(0, root.getTextNodes().size());
+		Assert.assertTrue(root.getElementByName("a").getText().startsWith("x &"));
+		Assert.assertFalse(root.getElementByName("b").hasChildren());
+
+		root = Document.fromInputStream(new ByteArrayInputStream(xml), WhitespacePolicy.PRESERVE).getRootElement();
+		Assert.assertEquals(3, root.getTextNodes().size());
+		Assert.assertEquals("\n\t", root.getTextNodes().get(0).getText());
+		Assert.assertEquals("\tx & & y", root.getElementByName("a").getText());
+		Assert.assertEquals("\n\t", root.getElementByName("b").getText());
+
+		root = Document.fromInputStream(new ByteArrayInputStream(xml), WhitespacePolicy.IGNORE_WHITESPACE_ONLY).getRootElement();
+		Assert.assertEquals(0, root.getTextNodes().size());
+		Assert.assertEquals("\tx & & y", root.getElementByName("a").getText());
+		Assert.assertFalse(root.getElementByName("b").hasChildren());
+	}
+
+	@Test
+	public void testNameTable() throws Exception
+	{
+		NameTable nameTable = new NameTable();
+		Element root1 = Document.fromFile("TestFiles/books.xml", WhitespacePolicy.STRIP_TABS, nameTable).getRootElement();
+		Element root2 = Document.fromFile("TestFiles/books.xml", WhitespacePolicy.STRIP_TABS, nameTable).getRootElement();
+
+		Element book1 = root1.getElementsByName("book").get(0);
+		Element book2 = root2.getElementsByName("book").get(1);
+		Assert.assertTrue(book1.getName() == book2.getName());
+		Assert.assertTrue(book1.getElementByName("title").getName() == book2.getElementByName("title").getName());
+		Assert.assertEquals(9, nameTable.size());
+
+		Assert.assertTrue(nameTable.intern(new String("book")) == book1.getName());
+	}
+
+	@Test
+	public void testGetElementById() throws Exception
+	{
+		Document document = Document.fromFile("TestFiles/books.xml");
+		Element root = document.getRootElement();
+		Element book = document.getElementById("bk104");
+		Assert.assertEquals("bk104", book.getId());
+		Assert.assertTrue(root.getElementsByName("book").get(3) == book);
+
+		// lookups are possible from any element of the tree
+		Element title = root.getElementById("bk110").getElementByName("title");
+		Assert.assertTrue(title.findElementById("bk104") == book);
+
+		// the index is maintained when subtrees are moved and ids change
+		Element wrapper = new Element("wrapper", "w1");
+		root.appendChild(wrapper);
+		wrapper.appendChild(book);
+		Assert.assertTrue(document.getElementById("w1") == wrapper);
+		Assert.assertTrue(title.findElementById("bk104") == book);
+
+		book.setId("bk999");
+		Assert.assertNull(document.getElementById("bk104"));
+		Assert.assertTrue(document.getElementById("bk999") == book);
+
+		root.removeChild(wrapper);
+		Assert.assertNull(document.getElementById("bk999"));
+		Assert.assertNull(document.getElementById("w1"));
+		Assert.assertTrue(book.findElementById("w1") == wrapper);
+
+		// lookups by id do not build the lists of elements by name
+		Assert.assertEquals(0, DocumentIndex.of(root).getNameEntryCount());
+		Assert.assertEquals(11, document.getDescendantsByName("title").size());
+		Assert.assertTrue(DocumentIndex.of(root).getNameEntryCount() > 0);
+	}
+
+	@Test
+	public void testGetDescendantsByName() throws Exception
+	{
+		Document document = Document.fromFile("TestFiles/books.xml");
+		Element root = document.getRootElement();
+		List<Element> titles = document.getDescendantsByName("title");
+		Assert.assertEquals(12, titles.size());
+		Assert.assertTrue(titles.get(1) == root.getElementsByName("book").get(1).getElementByName("title"));
+
+		Element book = root.getElementsByName("book").get(0);
+		Assert.assertEquals(1, book.getDescendantsByName("b").size());
+		Assert.assertEquals(0, book.getDescendantsByName("book").size());
+		Assert.assertEquals(12, root.getDescendantsByName("book").size());
+
+		// moving the first book to the end changes the document order
+		root.appendChild(book);
+		titles = root.getDescendantsByName("title");
+		Assert.assertTrue(titles.get(11) == book.getElementByName("title"));
+
+		// elements inserted in the middle of the tree are found in document order
+		Element secondBook = root.getElementsByName("book").get(1);
+		Element title = new Element("title");
+		secondBook.appendChild(title);
+		titles = root.getDescendantsByName("title");
+		Assert.assertEquals(13, titles.size());
+		Assert.assertTrue(titles.get(2) == title);
+		Assert.assertEquals(2, secondBook.getDescendantsByName("title").size());
+
+		root.removeChild(secondBook);
+		Assert.assertEquals(11, document.getDescendantsByName("title").size());
+		Assert.assertEquals(2, secondBook.getDescendantsByName("title").size());
+
+		// removed elements are dropped without further lookups once they outnumber the remaining elements
+		DocumentIndex index = DocumentIndex.of(root);
+		int entryCount = index.getNameEntryCount();
+		Element removed = root.getElementsByName("book").get(0);
+		root.removeChild(removed);
+		Assert.assertEquals(entryCount, index.getNameEntryCount());
+		for(int i = 0; i < 10000; i++)
+		{
+			Element subtree = new Element("book");
+			subtree.appendChild(new Element("title"));
+			root.appendChild(subtree);
+			root.removeChild(subtree);
+		}
+		Assert.assertTrue(index.getNameEntryCount() <= 2 * entryCount + 2);
+		Assert.assertEquals(10, document.getDescendantsByName("title").size());
+	}
+
+	@Test
+	public void testToW3CDocumentSync() throws Exception
+	{
+		Document document = Document.fromFile("TestFiles/books.xml");
+		org.w3c.dom.Document w3cDocument = new Document().toW3CDocument();
+		Element root = document.getRootElement();
+		org.w3c.dom.Node w3cRoot = w3cDocument.appendChild(root.toW3CNode(w3cDocument));
+		Element book = root.getElementsByName("book").get(1);
+		org.w3c.dom.Element w3cBook = (org.w3c.dom.Element)book.toW3CNode(w3cDocument);
+		org.w3c.dom.Node w3cTitle = book.getElementByName("title").toW3CNode(w3cDocument);
+
+		// changes are applied to the generated nodes
+		book.setAttribute("lang", "en");
+		book.setId("bk102");
+		book.getElementByName("title").getTextNodes().get(0).setText("Midday Rain");
+		Element isbn = new Element("isbn");
+		isbn.appendChild(new TextNode("123"));
+		book.insertBefore(isbn, book.getElementByName("title"));
+		book.removeChild(book.getElementByName("genre"));
+
+		Assert.assertTrue(root.toW3CNode(w3cDocument) == w3cRoot);
+		Assert.assertTrue(book.toW3CNode(w3cDocument) == w3cBook);
+		Assert.assertTrue(book.getElementByName("title").toW3CNode(w3cDocument) == w3cTitle);
+		Assert.assertEquals("en", w3cBook.getAttribute("lang"));
+		Assert.assertTrue(w3cDocument.getElementById("bk102") == w3cBook);
+		Assert.assertEquals("Midday Rain", w3cTitle.getTextContent());
+		Assert.assertEquals("isbn", w3cTitle.getPreviousSibling().getNodeName());
+		Assert.assertEquals(0, w3cBook.getElementsByTagName("genre").getLength());
+		Assert.assertEquals(Document.fromW3CDocument(w3cDocument), document);
+
+		// nodes are generated for the requested owner document
+		org.w3c.dom.Document otherDocument = new Document().toW3CDocument();
+		Assert.assertTrue(book.toW3CNode(otherDocument).getOwnerDocument() == otherDocument);
+		w3cRoot = root.toW3CNode(w3cDocument);
+		Assert.assertTrue(w3cRoot.getChildNodes().item(1).getOwnerDocument() == w3cDocument);
+
+		// appended text is applied when the document is converted again
+		TextNode description = document.getElementById("bk104").getElementByName("description").getTextNodes().get(0);
+		String text = description.getText();
+		StringBuilder chunk = new StringBuilder();
+		for(int i = 0; i < 100; i++)
+			chunk.append('x');
+		for(int i = 0; i < 20000; i++)
+			description.appendText(chunk.toString());
+		org.w3c.dom.Node w3cDescription = ((org.w3c.dom.Element)root.toW3CNode(w3cDocument)).getElementsByTagName("description").item(3).getFirstChild();
+		Assert.assertEquals(text.length() + 2000000, w3cDescription.getNodeValue().length());
+		Assert.assertEquals(description.getText(), w3cDescription.getNodeValue());
+		description.appendText("y");
+		Assert.assertTrue(description.toW3CNode(w3cDocument) == w3cDescription);
+		Assert.assertTrue(w3cDescription.getNodeValue().endsWith("xy"));
+	}
+
+	@Test
+	public void testToW3CDocumentCopy() throws Exception
+	{
+		Document document = Document.fromFile("TestFiles/books.xml");
+		org.w3c.dom.Document w3cDocument = document.toW3CDocument();
+		org.w3c.dom.Element w3cRoot = w3cDocument.getDocumentElement();
+
+		// changes to a converted document affect neither the document nor later conversions
+		w3cRoot.removeChild(w3cRoot.getElementsByTagName("book").item(0));
+		w3cRoot.setAttribute("junk", "1");
+		org.w3c.dom.Document otherDocument = document.toW3CDocument();
+		Assert.assertTrue(otherDocument != w3cDocument);
+		Assert.assertEquals(12, otherDocument.getDocumentElement().getElementsByTagName("book").getLength());
+		Assert.assertFalse(otherDocument.getDocumentElement().hasAttribute("junk"));
+		Assert.assertEquals(12, document.getRootElement().getChildCount());
+		Assert.assertEquals(document, Document.fromW3CDocument(otherDocument));
+
+		// queries processed by the built in XML library do not see the changes either
+		Assert.assertEquals(12, document.getRootElement().getElementsByQuery("book[not(lang('en'))]").size());
+	}
+
+	@Test
+	public void testAsW3CDocument() throws Exception
+	{
+		Document document = Document.fromFile("TestFiles/books.xml");
+		org.w3c.dom.Document view = document.asW3CDocument();
+
+		// transforming the view produces the same result as transforming a copy
+		Transformer transformer = TransformerFactory.newInstance().newTransformer();
+		StringWriter viewWriter = new StringWriter();
+		transformer.transform(new DOMSource(view), new StreamResult(viewWriter));
+		StringWriter copyWriter = new StringWriter();
+		transformer.transform(new DOMSource(document.toW3CDocument()), new StreamResult(copyWriter));
+		Assert.assertEquals(copyWriter.toString(), viewWriter.toString());
+
+		// the same view nodes are returned for the same elements
+		org.w3c.dom.Element root = view.getDocumentElement();
+		Assert.assertTrue(root == view.getFirstChild());
+		Assert.assertTrue(root.getFirstChild().getParentNode() == root);
+		org.w3c.dom.Element book = (org.w3c.dom.Element)view.getElementsByTagName("book").item(3);
+		Assert.assertTrue(view.getElementById("bk104") == book);
+		Assert.assertEquals("bk104", book.getAttribute("id"));
+		Assert.assertTrue(book.getUserData(Element.USER_DATA_KEY) == document.getElementById("bk104"));
+		Assert.assertEquals(org.w3c.dom.Node.DOCUMENT_POSITION_FOLLOWING, root.getFirstChild().compareDocumentPosition(book) & org.w3c.dom.Node.DOCUMENT_POSITION_FOLLOWING);
+
+		// attribute nodes are created on every access, but are the same node
+		org.w3c.dom.Attr id = book.getAttributeNode("id");
+		Assert.assertTrue(id.isSameNode(book.getAttributes().getNamedItem("id")));
+		Assert.assertEquals(0, id.compareDocumentPosition(book.getAttributes().item(0)));
+		id.setUserData("key", "value", null);
+		Assert.assertEquals("value", book.getAttributes().item(0).getUserData("key"));
+
+		// the view reflects the current elements
+		document.getElementById("bk104").getElementByName("title").getTextNodes().get(0).setText("Oberon's Heir");
+		Assert.assertEquals("Oberon's Heir", book.getElementsByTagName("title").item(0).getTextContent());
+
+		try
+		{
+			book.setAttribute("lang", "en");
+			Assert.fail();
+		}
+		catch(org.w3c.dom.DOMException e)
+		{
+			Assert.assertEquals(org.w3c.dom.DOMException.NO_MODIFICATION_ALLOWED_ERR, e.code);
+		}
+	}
 }
@@ -0,0 +1,81 @@
+package lightdom;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+public class DocumentWriterTest
+{
+	@Test
+	public void testWriteElements() throws Exception
+	{
+		Document doc = Document.fromFile("TestFiles/books.xml");
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		doc.toOutputStream(expected);
+
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		DocumentWriter writer = new DocumentWriter(actual, doc.getEncoding(), doc.getVersion());
+		writer.writeStartElement(doc.getRootElement().getName());
+		for(Element book : doc.getRootElement().getElementsByName("book"))
+			writer.writeElement(book);
+		writer.writeEndElement();
+		writer.close();
+
+		Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+	}
+
+	@Test
+	public void testWriteMixedContent() throws Exception
+	{
+		Element root = new Element("root");
+		Element a = new Element("a", "a1");
+		a.setAttribute("lang", "en & de");
+		a.appendChild(new TextNode("text <1>"));
+		a.appendChild(new Element("b"));
+		a.appendChild(new Element("c"));
+		a.appendChild(new TextNode("text 2"));
+		root.appendChild(a);
+		root.appendChild(new Element("d"));
+		Document doc = new Document();
+		doc.setRootElement(root);
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		doc.toOutputStream(expected);
+
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		DocumentWriter writer = new DocumentWriter(actual);
+		writer.writeStartElement("root");
+		writer.writeStartElement("a");
+		writer.writeAttribute("id", "a1");
+		writer.writeAttribute("lang", "en & de");
+		writer.writeText("text <1>");
+		writer.writeStartElement("b");
+		writer.writeEndElement();
+		writer.writeElement(new Element("c"));
+		writer.writeText("text 2");
+		writer.writeEndElement();
+		writer.writeStartElement("d");
+		// remaining open elements are closed by close()
+		writer.close();
+
+		Assert.assertEquals(expected.toString("UTF-8"), actual.toString("UTF-8"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testAttributeAfterContent() throws Exception
+	{
+		DocumentWriter writer = new DocumentWriter(new ByteArrayOutputStream());
+		writer.writeStartElement("root");
+		writer.writeText("text");
+		writer.writeAttribute("name", "value");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSecondRootElement() throws Exception
+	{
+		DocumentWriter writer = new DocumentWriter(new ByteArrayOutputStream());
+		writer.writeElement(new Element("root"));
+		writer.writeStartElement("root");
+	}
+}
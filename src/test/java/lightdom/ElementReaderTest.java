@@ -0,0 +1,79 @@
+package lightdom;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class ElementReaderTest
+{
+	@Test
+	public void testReadElements() throws Exception
+	{
+		List<Element> books = Document.fromFile("TestFiles/books.xml").getRootElement().getElementsByName("book");
+
+		ElementReader reader = new ElementReader("TestFiles/books.xml", "catalog/book");
+		try
+		{
+			int count = 0;
+			while(reader.hasNext())
+			{
+				Element book = reader.next();
+				Assert.assertNull(book.getParent());
+				Assert.assertEquals(books.get(count), book);
+				count++;
+			}
+			Assert.assertEquals(12, count);
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testReadNestedElements() throws Exception
+	{
+		String xml = "<root><a><b id=\"b1\">1</b><c><b>x</b></c><b>2</b></a><d><b>y</b></d><a><b><b>3</b></b></a></root>";
+		ElementReader reader = new ElementReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "/root/a/b/");
+
+		Assert.assertEquals("1", reader.next().getText());
+		Assert.assertEquals("2", reader.next().getText());
+		Element third = reader.next();
+		Assert.assertEquals("3", third.getElementByName("b").getText());
+		Assert.assertFalse(reader.hasNext());
+
+		try
+		{
+			reader.next();
+			Assert.fail();
+		}
+		catch(NoSuchElementException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void testWildcard() throws Exception
+	{
+		ElementReader reader = new ElementReader("TestFiles/books.xml", "*/*/price");
+		try
+		{
+			int count = 0;
+			while(reader.hasNext())
+			{
+				Assert.assertEquals("price", reader.next().getName());
+				count++;
+			}
+			Assert.assertEquals(13, count);
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+}
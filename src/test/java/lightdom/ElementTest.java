@@ -4,6 +4,15 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 public class ElementTest
 {
 	private Document doc = null;
@@ -40,6 +49,11 @@ public class ElementTest
 
 		Assert.assertEquals(price1, 44.95d, Double.MIN_VALUE);
 		Assert.assertEquals(price2, 31.95d, Double.MIN_VALUE);
+
+		Element book = doc.getRootElement().getElementByName("book");
+		Assert.assertEquals(44, book.getElementByName("price").getTextAsInt(-1));
+		Assert.assertEquals(-1, book.getElementByName("title").getTextAsInt(-1));
+		Assert.assertEquals(-1L, book.getAttributeAsLong("missing", -1L));
 	}
 
 	@Test
@@ -54,6 +68,250 @@ public class ElementTest
 		Assert.assertEquals(doc2.getRootElement().getElementsByName("book").get(11).getElementByName("description").getIndex(), "-1,11,5");
 	}
 
+	@Test
+	public void testRemoveChild() throws Exception
+	{
+		Element rootElement = doc.getRootElement();
+		Element firstBook = rootElement.getElementByName("book");
+		Element secondBook = rootElement.getElementsByName("book").get(1);
+
+		Assert.assertTrue(firstBook.getParent() == rootElement);
+		Assert.assertEquals(secondBook.getElementByName("description").getIndex(), "-1,1,5");
+
+		// remove first book element
+		rootElement.removeChild(firstBook);
+
+		// check parent and index
+		Assert.assertNull(firstBook.getParent());
+		Assert.assertEquals(firstBook.getIndex(), "-1");
+		Assert.assertEquals(secondBook.getElementByName("description").getIndex(), "-1,0,5");
+		Assert.assertEquals(rootElement.getElementsByName("book").size(), 11);
+
+		// index must not be stored as attribute
+		Assert.assertNull(secondBook.getAttribute("lightdom-element-index"));
+		Assert.assertEquals(secondBook.getAttributes().size(), 0);
+	}
+
+	@Test
+	public void testInsertAndRemoveChildren() throws Exception
+	{
+		Element root = new Element("root");
+		Element a = new Element("a");
+		Element b = new Element("b");
+		Element c = new Element("c");
+		root.appendChild(b);
+		root.insertBefore(a, b);
+		root.insertAfter(c, b);
+		root.insertAfter(new TextNode("x"), null);
+		Assert.assertEquals(4, root.getChildCount());
+		Assert.assertTrue(root.getChildren().get(1) == a);
+		Assert.assertTrue(root.getLastChild() == c);
+		Assert.assertTrue(b.getPreviousSibling() == a && b.getNextSibling() == c);
+		Assert.assertEquals("-1,2", b.getIndex());
+		Assert.assertEquals("x", root.getText());
+
+		// moving a child within the same parent
+		root.insertBefore(c, a);
+		Assert.assertEquals("-1,3", b.getIndex());
+		Assert.assertTrue(root.getElements().get(0) == c);
+
+		// remove all elements
+		int removedChildren = root.removeChildren(new NodeFilter()
+		{
+			@Override
+			public boolean accept(Node node)
+			{
+				return node instanceof Element;
+			}
+		});
+		Assert.assertEquals(3, removedChildren);
+		Assert.assertEquals(1, root.getChildCount());
+		Assert.assertNull(a.getParent());
+		Assert.assertNull(a.getNextSibling());
+		Assert.assertFalse(root.hasElementWithName("b"));
+
+		Iterator<Node> iterator = root.getChildren().iterator();
+		iterator.next();
+		iterator.remove();
+		Assert.assertFalse(root.hasChildren());
+		Assert.assertNull(root.getText());
+	}
+
+	@Test
+	public void testInsertChildren() throws Exception
+	{
+		Element root = new Element("root");
+		List<Node> nodes = new ArrayList<>();
+		for(int i = 0; i < 5; i++)
+			nodes.add(new Element("e", "e" + i));
+		root.appendChildren(nodes);
+		Assert.assertEquals(5, root.getChildCount());
+		Assert.assertEquals("-1,4", ((Element)nodes.get(4)).getIndex());
+
+		Element inserted = new Element("inserted");
+		root.insertChild(3, inserted);
+		Assert.assertTrue(root.getChildren().get(3) == inserted);
+		Assert.assertEquals("-1,4", ((Element)nodes.get(3)).getIndex());
+
+		// positions refer to the list without the node if it is a child already
+		root.insertChild(0, inserted);
+		Assert.assertTrue(root.getFirstChild() == inserted);
+		root.insertChild(5, inserted);
+		Assert.assertTrue(root.getLastChild() == inserted);
+
+		TextNode text = new TextNode("text");
+		Assert.assertTrue(root.replaceChild(text, nodes.get(2)) == nodes.get(2));
+		Assert.assertNull(nodes.get(2).getParent());
+		Assert.assertTrue(root.getChildren().get(2) == text);
+		Assert.assertEquals("text", root.getText());
+		Assert.assertNull(root.getElementById("e2"));
+		Assert.assertTrue(root.getElementById("e3") == nodes.get(3));
+
+		try
+		{
+			root.insertChild(7, new Element("e"));
+			Assert.fail();
+		}
+		catch(IndexOutOfBoundsException e)
+		{
+			// expected
+		}
+
+		// an invalid position leaves the node with its former parent
+		Element other = new Element("other");
+		Node moved = root.getFirstChild();
+		int childCount = root.getChildCount();
+		try
+		{
+			other.insertChild(5, moved);
+			Assert.fail();
+		}
+		catch(IndexOutOfBoundsException e)
+		{
+			// expected
+		}
+		Assert.assertTrue(moved.getParent() == root);
+		Assert.assertEquals(childCount, root.getChildCount());
+
+		// the position of a child of the same element refers to the list without the node
+		try
+		{
+			root.insertChild(childCount, moved);
+			Assert.fail();
+		}
+		catch(IndexOutOfBoundsException e)
+		{
+			// expected
+		}
+		root.insertChild(childCount - 1, moved);
+		Assert.assertTrue(root.getLastChild() == moved);
+
+		// appending the children of an element to itself keeps their order
+		List<Node> children = new ArrayList<>(root.getChildren());
+		root.appendChildren(root.getChildren());
+		Assert.assertEquals(children, root.getChildren());
+	}
+
+	@Test
+	public void testChildIndexes() throws Exception
+	{
+		Element root = new Element("root");
+		Element a1 = new Element("a", "1");
+		root.appendChild(a1);
+
+		// indexes are built on the first lookup
+		Assert.assertTrue(root.getElementById("1") == a1);
+		Assert.assertEquals(1, root.getElementsByName("a").size());
+
+		// and maintained from then on
+		Element a2 = new Element("a", "2");
+		root.appendChild(a2);
+		Assert.assertEquals(2, root.getElementsByName("a").size());
+		Assert.assertTrue(root.getElementById("2") == a2);
+
+		a2.setId("3");
+		Assert.assertNull(root.getElementById("2"));
+		Assert.assertTrue(root.getElementById("3") == a2);
+
+		root.removeChild(a1);
+		Assert.assertFalse(root.hasElementWithId("1"));
+		Assert.assertTrue(root.getElementByName("a") == a2);
+
+		root.removeChild(a2);
+		Assert.assertFalse(root.hasElementWithName("a"));
+	}
+
+	@Test
+	public void testAttributes() throws Exception
+	{
+		Element element = new Element("e");
+		Assert.assertTrue(element.getAttributes().isEmpty());
+		Assert.assertTrue(element.getChildren().isEmpty());
+
+		element.setAttribute("a", "1");
+		element.setAttribute("b", "2");
+		element.setAttribute("c", "3");
+		element.setAttribute("a", "4");
+		Assert.assertEquals(3, element.getAttributes().size());
+		Assert.assertEquals("4", element.getAttribute("a"));
+		Assert.assertTrue(element.hasAttributeWithName("c"));
+
+		// the map is a view of the attributes
+		Map<String, String> attributes = element.getAttributes();
+		Assert.assertEquals("2", attributes.remove("b"));
+		attributes.put("d", "5");
+		Assert.assertNull(element.getAttribute("b"));
+		Assert.assertEquals("5", element.getAttribute("d"));
+		StringWriter writer = new StringWriter();
+		element.write(writer, 0, false);
+		Assert.assertEquals("<e a=\"4\" c=\"3\" d=\"5\"/>", writer.toString());
+
+		Map<String, String> expected = new HashMap<>();
+		expected.put("a", "4");
+		expected.put("c", "3");
+		expected.put("d", "5");
+		Assert.assertEquals(expected, attributes);
+		Assert.assertEquals(element, new Element("e", null, expected));
+
+		attributes.clear();
+		Assert.assertFalse(element.hasAttributeWithName("a"));
+	}
+
+	@Test
+	public void testEqualsAndHashCode() throws Exception
+	{
+		Element root1 = Document.fromFile("TestFiles/books.xml").getRootElement();
+		Element root2 = Document.fromFile("TestFiles/books.xml").getRootElement();
+		Assert.assertEquals(root1, root2);
+		Assert.assertEquals(root1.hashCode(), root2.hashCode());
+
+		Set<Element> roots = new HashSet<>();
+		roots.add(root1);
+		Assert.assertTrue(roots.contains(root2));
+
+		// changes deep in the tree are reflected
+		TextNode price = root2.getElementsByName("book").get(5).getElementByName("price").getTextNodes().get(0);
+		price.setText("1.00");
+		Assert.assertNotEquals(root1, root2);
+		Assert.assertNotEquals(root1.hashCode(), root2.hashCode());
+		Assert.assertFalse(roots.contains(root2));
+		price.setText(root1.getElementsByName("book").get(5).getElementByName("price").getText());
+		Assert.assertEquals(root1.hashCode(), root2.hashCode());
+
+		// the order of the children matters, the order of the attributes does not
+		root2.getElementsByName("book").get(1).appendChild(root2.getElementsByName("book").get(1).getElementByName("author"));
+		Assert.assertNotEquals(root1, root2);
+
+		Element a = new Element("a");
+		a.setAttribute("x", "1");
+		a.setAttribute("y", "2");
+		Element b = new Element("a");
+		b.setAttribute("y", "2");
+		b.setAttribute("x", "1");
+		Assert.assertEquals(a, b);
+		Assert.assertEquals(a.hashCode(), b.hashCode());
+	}
+
 	@Test
 	public void testGetElementsByQuery() throws Exception
 	{
@@ -65,4 +323,79 @@ public class ElementTest
 		Assert.assertEquals(book2Author.getText(), "Corets, Eva");
 		Assert.assertTrue(book2Author == doc.getRootElement().getElementById("bk105").getElementByName("author"));
 	}
+
+	@Test
+	public void testWrite() throws Exception
+	{
+		Element root = new Element("root", "r&1");
+		Element a = new Element("a");
+		a.appendChild(new TextNode("'line' 1\nline <2>\n"));
+		root.appendChild(a);
+		root.appendChild(new TextNode("text"));
+		root.appendChild(new Element("b"));
+
+		StringWriter writer = new StringWriter();
+		root.write(writer, 1, true);
+		Assert.assertEquals("\n\t<root id=\"r&amp;1\">\n\t\t<a>'line' 1\n\t\t\tline &lt;2&gt;\n\t\t</a>text<b/>\n\t</root>", writer.toString());
+	}
+
+	@Test
+	public void testAppendText() throws Exception
+	{
+		TextNode textNode = new TextNode();
+		char[] chunk = "-abc-".toCharArray();
+		for(int i = 0; i < 10000; i++)
+			textNode.appendText(chunk, 1, 3);
+		textNode.appendText("d");
+
+		String text = textNode.getText();
+		Assert.assertEquals(30001, text.length());
+		Assert.assertTrue(text.startsWith("abcabc") && text.endsWith("abcd"));
+		Assert.assertTrue(text == textNode.getText());
+
+		textNode.appendText("e");
+		Assert.assertEquals(text + "e", textNode.getText());
+		textNode.setText("f");
+		Assert.assertEquals("f", textNode.getText());
+	}
+
+	@Test
+	public void testGetText() throws Exception
+	{
+		Element root = new Element("root");
+		Element a = new Element("a");
+		TextNode text = new TextNode("x");
+		a.appendChild(text);
+		root.appendChild(new TextNode("1"));
+		root.appendChild(a);
+		root.appendChild(new TextNode("2"));
+		Assert.assertEquals("1x2", root.getText());
+		Assert.assertTrue(root.getText() == root.getText());
+
+		text.appendText("y");
+		Assert.assertEquals("1xy2", root.getText());
+		text.setText("z");
+		Assert.assertEquals("1z2", root.getText());
+
+		Element b = new Element("b");
+		b.appendChild(new TextNode("w"));
+		a.appendChild(b);
+		Assert.assertEquals("zw", a.getText());
+		Assert.assertEquals("1zw2", root.getText());
+
+		// elements without text nodes do not contribute the text of their children
+		a.removeChild(text);
+		Assert.assertNull(a.getText());
+		Assert.assertEquals("12", root.getText());
+		b.getTextNodes().get(0).setText("u");
+		Assert.assertEquals("12", root.getText());
+
+		// changes below elements without cached text of their own invalidate the cached text of the parents
+		a.appendChild(new TextNode("v"));
+		Assert.assertEquals("1uv2", root.getText());
+		b.getTextNodes().get(0).setText("t");
+		Assert.assertEquals("1tv2", root.getText());
+		b.appendChild(new TextNode("s"));
+		Assert.assertEquals("1tsv2", root.getText());
+	}
 }
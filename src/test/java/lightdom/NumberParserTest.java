@@ -0,0 +1,92 @@
+package lightdom;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+public class NumberParserTest
+{
+	@Test
+	public void testParseLong() throws Exception
+	{
+		Assert.assertEquals(9007199254740993L, NumberParser.parseLong("9007199254740993"));
+		Assert.assertEquals(Long.MAX_VALUE, NumberParser.parseLong("9223372036854775807"));
+		Assert.assertEquals(Long.MIN_VALUE, NumberParser.parseLong("-9223372036854775808"));
+		Assert.assertEquals(Long.MAX_VALUE, NumberParser.parseLong("99999999999999999999"));
+		Assert.assertEquals(-42L, NumberParser.parseLong(" -42.9 "));
+		Assert.assertEquals(1500L, NumberParser.parseLong("1.5e3"));
+		Assert.assertEquals(7L, NumberParser.parseLong("x", 7L));
+		Assert.assertEquals(7L, NumberParser.parseLong(null, 7L));
+	}
+
+	@Test
+	public void testParseInt() throws Exception
+	{
+		Assert.assertEquals(123, NumberParser.parseInt("+123"));
+		Assert.assertEquals(Integer.MAX_VALUE, NumberParser.parseInt("3000000000"));
+		Assert.assertEquals(Integer.MIN_VALUE, NumberParser.parseInt("-1e20"));
+		Assert.assertEquals(-1, NumberParser.parseInt("", -1));
+
+		char[] ch = "<a>4711</a>".toCharArray();
+		Assert.assertEquals(4711, NumberParser.parseInt(ch, 3, 4));
+		Assert.assertEquals(-1, NumberParser.parseInt(ch, 0, 4, -1));
+	}
+
+	@Test
+	public void testParseDouble() throws Exception
+	{
+		Assert.assertEquals(44.95, NumberParser.parseDouble("44.95"), 0.0);
+		Assert.assertEquals(12.0, NumberParser.parseDouble("12"), 0.0);
+		Assert.assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(NumberParser.parseDouble("-0")));
+		Assert.assertTrue(Double.isNaN(NumberParser.parseDouble("NaN")));
+		Assert.assertEquals(0.5, NumberParser.parseDouble("abc".toCharArray(), 0, 3, 0.5), 0.0);
+	}
+
+	@Test
+	public void testParseFromReader() throws Exception
+	{
+		// prices are parsed from the text buffer of the reader without creating strings
+		double sum = 0.0;
+		InputStream inputStream = new FileInputStream("TestFiles/books.xml");
+		try
+		{
+			XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+			boolean price = false;
+			while(reader.hasNext())
+			{
+				int event = reader.next();
+				if(event == XMLStreamConstants.START_ELEMENT)
+					price = reader.getLocalName().equals("price");
+				else if(event == XMLStreamConstants.END_ELEMENT)
+					price = false;
+				else if(event == XMLStreamConstants.CHARACTERS && price)
+					sum += NumberParser.parseDouble(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+			}
+			reader.close();
+		}
+		finally
+		{
+			inputStream.close();
+		}
+
+		double expected = 0.0;
+		for(Element price : Document.fromFile("TestFiles/books.xml").getRootElement().getElementsByQuery("//price"))
+			expected += price.getTextAsDouble();
+		Assert.assertEquals(expected, sum, 1e-9);
+
+		char[] ch = " 12 ".toCharArray();
+		Assert.assertEquals(12L, NumberParser.parseLong(ch, 0, ch.length));
+		Assert.assertEquals(-1L, NumberParser.parseLong(ch, 0, 0, -1L));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testMalformedValue() throws Exception
+	{
+		NumberParser.parseInt("12a");
+	}
+}
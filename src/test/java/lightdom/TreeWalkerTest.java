@@ -0,0 +1,144 @@
+package lightdom;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TreeWalkerTest
+{
+	@Test
+	public void testEvents() throws Exception
+	{
+		Element a = new Element("a");
+		Element b = new Element("b");
+		b.appendChild(new Element("c"));
+		a.appendChild(b);
+		a.appendChild(new TextNode("text"));
+		a.appendChild(new Element("d"));
+
+		StringBuilder events = new StringBuilder();
+		TreeWalker walker = new TreeWalker(a);
+		while(walker.next())
+		{
+			Node node = walker.getCurrentNode();
+			if(node instanceof TextNode)
+				events.append(walker.getDepth()).append('"').append(((TextNode)node).getText()).append("\" ");
+			else
+				events.append(walker.getDepth()).append(walker.isLeaving() ? "/" : "").append(((Element)node).getName()).append(' ');
+
+			if(node == b && !walker.isLeaving())
+				walker.skipChildren();
+		}
+		Assert.assertEquals("0a 1b 1/b 1\"text\" 1d 1/d 0/a ", events.toString());
+		Assert.assertFalse(walker.next());
+		Assert.assertNull(walker.getCurrentNode());
+
+		// a text node is a subtree with a single event
+		walker = new TreeWalker(new TextNode("single"));
+		Assert.assertTrue(walker.next());
+		Assert.assertFalse(walker.isLeaving());
+		Assert.assertFalse(walker.next());
+	}
+
+	@Test
+	public void testVisitor() throws Exception
+	{
+		Element catalog = Document.fromFile("TestFiles/books.xml").getRootElement();
+		final StringBuilder events = new StringBuilder();
+		final int[] counts = new int[2];
+
+		// titles and prices are collected in one pass, descriptions are skipped
+		boolean completed = catalog.accept(new NodeVisitor()
+		{
+			@Override
+			public VisitResult enterElement(Element element)
+			{
+				if(element.getName().equals("description"))
+					return VisitResult.SKIP_CHILDREN;
+				if(element.getName().equals("title"))
+					counts[0]++;
+				else if(element.getName().equals("price"))
+					counts[1]++;
+				return VisitResult.CONTINUE;
+			}
+
+			@Override
+			public VisitResult leaveElement(Element element)
+			{
+				if(element.getName().equals("description"))
+					events.append('d');
+				return VisitResult.CONTINUE;
+			}
+
+			@Override
+			public VisitResult visitText(TextNode textNode)
+			{
+				if(textNode.getParent().getName().equals("b"))
+					events.append('b');
+				return VisitResult.CONTINUE;
+			}
+		});
+		Assert.assertTrue(completed);
+		Assert.assertEquals(catalog.getElementsByQuery("//title").size(), counts[0]);
+		Assert.assertEquals(catalog.getElementsByQuery("//price").size(), counts[1]);
+		Assert.assertEquals(catalog.getElementsByQuery("//description").size(), events.length());
+
+		// the walk stops at the first book
+		final List<String> ids = new ArrayList<>();
+		completed = catalog.accept(new NodeVisitor()
+		{
+			@Override
+			public VisitResult enterElement(Element element)
+			{
+				if(element.getName().equals("book"))
+				{
+					ids.add(element.getId());
+					return VisitResult.STOP;
+				}
+				return VisitResult.CONTINUE;
+			}
+
+			@Override
+			public VisitResult leaveElement(Element element)
+			{
+				return VisitResult.CONTINUE;
+			}
+
+			@Override
+			public VisitResult visitText(TextNode textNode)
+			{
+				return VisitResult.CONTINUE;
+			}
+		});
+		Assert.assertFalse(completed);
+		Assert.assertEquals(Collections.singletonList("bk101"), ids);
+	}
+
+	@Test
+	public void testDeepTree() throws Exception
+	{
+		// the tree is built bottom-up, elements between text nodes are written without indentation
+		Element root = new Element("level");
+		for(int i = 0; i < 100000; i++)
+		{
+			Element parent = new Element("level");
+			parent.appendChild(new TextNode("t"));
+			parent.appendChild(root);
+			parent.appendChild(new TextNode("t"));
+			root = parent;
+		}
+
+		// none of the traversals overflow the stack
+		StringWriter writer = new StringWriter();
+		root.write(writer, 0, false);
+		Assert.assertTrue(writer.toString().endsWith("t</level>"));
+		Assert.assertEquals(200000, root.getText().length());
+		Element copy = Element.fromW3CNode(root.toW3CNode(new Document().toW3CDocument()));
+		Assert.assertEquals(root, copy);
+		Assert.assertEquals(root.hashCode(), copy.hashCode());
+	}
+}
@@ -0,0 +1,190 @@
+package lightdom;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+public class XPathExprTest
+{
+	private static final String[] QUERIES = {
+			"book",
+			"book/title",
+			"//title",
+			"//book[2]/title",
+			"book[last()]",
+			"book[position() < 3]/author",
+			"book[@id = 'bk101']",
+			"book[@id = 'bk101' and price > 30]/title",
+			"book[contains(description, 'battle one another')]/author",
+			"/catalog/book[3]",
+			"//price[. > 40]",
+			"book[price > 30][2]",
+			"book/price[1]",
+			"//book/price[1]",
+			"(//price)[1]",
+			"(//price)[last()]/..",
+			"//description/b",
+			"//b/..",
+			"//b/ancestor::*",
+			"//b/ancestor::book/title",
+			"book[3]/preceding-sibling::book",
+			"book[3]/preceding-sibling::book[1]",
+			"book[3]/following-sibling::book[1]",
+			"book[10]/following::title",
+			"book[2]/preceding::author",
+			"book[2]/preceding::*[1]",
+			"descendant::genre[. = 'Romance']",
+			"book[genre = 'Fantasy' or genre = 'Romance']/title",
+			"book[not(genre = 'Fantasy')]",
+			"book[starts-with(author, 'Corets')]",
+			"book[string-length(title) > 20]",
+			"book[count(price) = 2]",
+			"book[normalize-space(description) = 'When Carla meets Paul at an ornithology conference, tempers fly as feathers get ruffled.']",
+			"book[substring(publish_date, 1, 4) = '2001']",
+			"book[translate(genre, 'abcdefghijklmnopqrstuvwxyz', 'ABCDEFGHIJKLMNOPQRSTUVWXYZ') = 'HORROR']",
+			"*[@id]",
+			"book[@*]",
+			"book[sum(price) > 70]",
+			"book[floor(price) = 5]",
+			"book[round(price) = 37]",
+			"book[price * 2 > 80]",
+			"book[price div 5 > 9]",
+			"book[position() mod 2 = 0]",
+			"book[-price < -40]",
+			"book/title | book/author",
+			"id('bk105')/title",
+			"book[@id = \"bk105\"]/self::book",
+			"book/*[1]",
+			"book/node()[1]",
+			"book[description/text()]",
+			".",
+			"..",
+			"//*[text() = 'Fantasy']",
+			"book[concat(genre, '-', price) = 'Fantasy-5.95']",
+			"book[substring-before(publish_date, '-') = '2000']",
+			"book[substring-after(publish_date, '-') = '12-16']",
+			"book[number(price) = 5.95]",
+			"book[boolean(description/b)]",
+			"book[price = 5.95]/author",
+			"book[price != 5.95]/author",
+			"book[price >= 36.95][price <= 44.95]",
+			"book[true()]",
+			"book[false()]",
+			"descendant-or-self::book[1]",
+			"//book[1]",
+			"//*[local-name() = 'genre']",
+			"(//*[name() = 'title'])[2]",
+			"child::book[attribute::id = 'bk104']/child::*[last() - 1]",
+			"book[price > //book[1]/price[2]]/title"
+	};
+
+	private Document doc = null;
+	private org.w3c.dom.Document w3cDocument = null;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		doc = Document.fromFile("TestFiles/books.xml");
+		w3cDocument = doc.toW3CDocument();
+	}
+
+	@Test
+	public void testQueriesOnRootElement() throws Exception
+	{
+		for(String query : QUERIES)
+			assertSameResult(doc.getRootElement(), w3cDocument.getDocumentElement(), query);
+	}
+
+	@Test
+	public void testQueriesOnChildElement() throws Exception
+	{
+		Element book = doc.getRootElement().getElementsByName("book").get(2);
+		org.w3c.dom.Node w3cBook = w3cDocument.getDocumentElement().getChildNodes().item(2);
+
+		String[] queries = {"title", "../book[1]/title", "/catalog/book[2]", "preceding-sibling::*", "ancestor-or-self::*", "following::book[1]/@id/..", "//b", "parent::catalog"};
+		for(String query : queries)
+			assertSameResult(book, w3cBook, query);
+	}
+
+	@Test
+	public void testChildStepWithoutNameIndex() throws Exception
+	{
+		// child steps scan the children of the context elements instead of building name indexes
+		Element book = doc.getRootElement().getElementsByName("book").get(2);
+		Assert.assertEquals(1, doc.getRootElement().getElementsByQuery("//book/title[. = 'Maeve Ascendant']").size());
+		Assert.assertNull(book.getIndexedElementsByName("title"));
+
+		// an existing index is used
+		Assert.assertNotNull(book.getElementByName("title"));
+		Assert.assertEquals(book.getElementsByName("title"), book.getElementsByQuery("title"));
+		Assert.assertEquals(0, book.getElementsByQuery("isbn").size());
+	}
+
+	@Test
+	public void testUnsupportedQuery() throws Exception
+	{
+		// lang() is not supported by the native engine and is processed by the built in XML library
+		Assert.assertEquals(0, doc.getRootElement().getElementsByQuery("book[lang('en')]").size());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testQueryNotReturningNodeSet() throws Exception
+	{
+		doc.getRootElement().getElementsByQuery("count(book)");
+	}
+
+	@Test
+	public void testParser() throws Exception
+	{
+		String[] invalidQueries = {"book[", "book]", "book[@id = 'bk101]", "book/", "$variable", "namespace::*", "unknown-function()"};
+		for(String query : invalidQueries)
+		{
+			try
+			{
+				XPathParser.parse(query);
+				Assert.fail("Expected exception for query " + query);
+			}
+			catch(IllegalArgumentException e)
+			{
+				// expected
+			}
+		}
+	}
+
+	private static void assertSameResult(Element element, org.w3c.dom.Node w3cNode, String query) throws Exception
+	{
+		List<String> expected = new ArrayList<>();
+		NodeList nodeList = (NodeList)XPathFactory.newInstance().newXPath().evaluate(query, w3cNode, XPathConstants.NODESET);
+		for(int i = 0; i < nodeList.getLength(); i++)
+		{
+			if(nodeList.item(i) instanceof org.w3c.dom.Element)
+				expected.add(getIndex(nodeList.item(i)));
+		}
+
+		List<String> actual = new ArrayList<>();
+		for(Element result : element.getElementsByQuery(query))
+			actual.add(result.getIndex());
+
+		Assert.assertEquals(query, expected, actual);
+	}
+
+	private static String getIndex(org.w3c.dom.Node node)
+	{
+		String index = "";
+		while(node.getParentNode() instanceof org.w3c.dom.Element)
+		{
+			int childIndex = 0;
+			for(org.w3c.dom.Node sibling = node.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling())
+				childIndex++;
+			index = "," + childIndex + index;
+			node = node.getParentNode();
+		}
+		return "-1" + index;
+	}
+}